@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * This class is used to write the log of a server without slowing down the
+ * threads which write it. log() only puts the line into a bounded queue, and
+ * a daemon thread takes the queued lines and passes them in batches to the
+ * output (e.g. the console, or a text area on the event dispatch thread).
+ * <p>
+ * Under load, the lines beyond the capacity of the queue or beyond the
+ * maximum number of lines per second are dropped rather than held, so the
+ * log costs the server a bounded amount of memory and time whatever the
+ * number of messages; the output is told how many lines were dropped, at
+ * most once a second.
+ *
+ * @author Kenneth Wong
+ */
+public class AsyncLogSink {
+	/**
+	 * The default capacity of the queue (in lines).
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+	/**
+	 * The default maximum number of lines per second.
+	 */
+	public static final int DEFAULT_MAX_LINES_PER_SECOND = 1000;
+	// maximum number of lines passed to the output at once
+	private static final int MAX_BATCH = 256;
+
+	private final ArrayBlockingQueue<String> queue;
+	private final Consumer<List<String>> output;
+	private final Thread writer;
+	private volatile int maxLinesPerSecond;
+	// the second (of System.nanoTime()) being counted, and its lines
+	private volatile long currentSecond = 0;
+	private final AtomicInteger linesThisSecond = new AtomicInteger();
+	private final AtomicLong numOfDropped = new AtomicLong();
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a log sink and starts its thread.
+	 *
+	 * @param name
+	 *            the name of the thread
+	 * @param capacity
+	 *            the maximum number of lines waiting to be written
+	 * @param maxLinesPerSecond
+	 *            the maximum number of lines accepted per second (0 to drop
+	 *            every line)
+	 * @param output
+	 *            the output of the lines, called by the thread of the sink
+	 *            with one or more lines at a time
+	 */
+	public AsyncLogSink(String name, int capacity, int maxLinesPerSecond, Consumer<List<String>> output) {
+		this.queue = new ArrayBlockingQueue<String>(capacity);
+		this.maxLinesPerSecond = Math.max(0, maxLinesPerSecond);
+		this.output = output;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeLines();
+			}
+		}, name);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues a line to be written, unless the queue is full or the maximum
+	 * number of lines has been reached in the current second. Never blocks.
+	 *
+	 * @param line
+	 *            the line
+	 * @return true if the line has been queued, false if it has been dropped
+	 */
+	public boolean log(String line) {
+		long second = System.nanoTime() / 1000000000L;
+		if (second != currentSecond) {
+			// a line counted for the previous second may be lost in the race,
+			// which only lets an extra line through
+			currentSecond = second;
+			linesThisSecond.set(0);
+		}
+		if (closed || linesThisSecond.incrementAndGet() > maxLinesPerSecond || !queue.offer(line)) {
+			numOfDropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the maximum number of lines accepted per second.
+	 *
+	 * @param maxLinesPerSecond
+	 *            the maximum number of lines (0 to drop every line)
+	 */
+	public void setMaxLinesPerSecond(int maxLinesPerSecond) {
+		this.maxLinesPerSecond = Math.max(0, maxLinesPerSecond);
+	}
+
+	/**
+	 * Returns the number of lines dropped so far.
+	 *
+	 * @return the number of lines dropped
+	 */
+	public long getNumOfDropped() {
+		return numOfDropped.get();
+	}
+
+	/**
+	 * Stops accepting lines, and waits until the queued lines have been
+	 * written (e.g. before the JVM exits).
+	 *
+	 * @param timeoutMillis
+	 *            the maximum time to wait, in milliseconds
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void close(long timeoutMillis) throws InterruptedException {
+		closed = true;
+		writer.interrupt();
+		writer.join(timeoutMillis);
+	}
+
+	// Passes the queued lines to the output until the sink is closed
+	private void writeLines() {
+		ArrayList<String> batch = new ArrayList<String>(MAX_BATCH);
+		long reported = 0; // number of dropped lines already reported
+		long reportTime = System.nanoTime();
+		while (true) {
+			try {
+				String line = queue.poll(1, TimeUnit.SECONDS);
+				if (line != null) {
+					batch.add(line);
+					queue.drainTo(batch, MAX_BATCH - 1);
+				}
+			} catch (InterruptedException ex) {
+				// closed: writes what is left
+				queue.drainTo(batch);
+			}
+			long dropped = numOfDropped.get();
+			long now = System.nanoTime();
+			if (dropped > reported && maxLinesPerSecond > 0
+					&& (closed || now - reportTime >= 1000000000L)) {
+				batch.add("(" + (dropped - reported) + " log lines dropped)");
+				reported = dropped;
+				reportTime = now;
+			}
+			if (!batch.isEmpty()) {
+				try {
+					output.accept(batch);
+				} catch (RuntimeException ex) {
+					// the log must not stop the server
+				}
+				batch = new ArrayList<String>(MAX_BATCH);
+			}
+			if (closed && queue.isEmpty()) {
+				return;
+			}
+		}
+	}
+}
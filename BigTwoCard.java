@@ -1,12 +1,29 @@
 /**
  * This class is used to model a card used in  a Big Two card ga,e
+ * <p>
+ * There is exactly one instance of each of the 52 cards. Instances are
+ * obtained with valueOf() and deserialized cards are mapped back to the same
+ * instances, so two BigTwoCard references are equal if and only if they are
+ * identical.
  * 
  * @author Chan Sze Wing
  */
 public class BigTwoCard extends Card {
+	private static final long serialVersionUID = -6882428045893598171L;
+	// canonical instances, indexed by suit * 13 + rank
+	private static final BigTwoCard[] CARDS = new BigTwoCard[52];
+
+	static {
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 13; j++) {
+				CARDS[i * 13 + j] = new BigTwoCard(i, j);
+			}
+		}
+	}
 	
 	/**
 	 * Creates and returns an instance of the BigTwoCard
+	 * (only used to fill the table of canonical instances)
 	 * 
 	 * @param suit an int value between 0 and 3 representing the suit of a card:
 	 *             <p>
@@ -16,9 +33,25 @@ public class BigTwoCard extends Card {
 	 *             0 = 'A', 1 = '2', 2 = '3', ..., 8 = '9', 9 = '0', 10 = 'J', 11 =
 	 *             'Q', 12 = 'K'
 	 */
-    public BigTwoCard(int suit, int rank) {
+    private BigTwoCard(int suit, int rank) {
         super(suit, rank);
     }
+
+	/**
+	 * Returns the canonical instance of the BigTwoCard
+	 * 
+	 * @param suit an int value between 0 and 3 representing the suit of a card:
+	 *             <p>
+	 *             0 = Diamond, 1 = Club, 2 = Heart, 3 = Spade
+	 * @param rank an int value between 0 and 12 representing the rank of a card:
+	 *             <p>
+	 *             0 = 'A', 1 = '2', 2 = '3', ..., 8 = '9', 9 = '0', 10 = 'J', 11 =
+	 *             'Q', 12 = 'K'
+	 * @return the shared instance of the card with the specified suit and rank
+	 */
+    public static BigTwoCard valueOf(int suit, int rank) {
+        return CARDS[suit * 13 + rank];
+    }
     
     /**
 	 * Compares this card with the specified card in the Big Two order.
@@ -51,4 +84,13 @@ public class BigTwoCard extends Card {
         }
     }
 
+    /**
+     * Replaces a deserialized card with the canonical instance.
+     * 
+     * @return the shared instance of this card
+     */
+    private Object readResolve() {
+        return valueOf(this.suit, this.rank);
+    }
+
 }
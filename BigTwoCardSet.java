@@ -0,0 +1,276 @@
+import java.io.Serializable;
+
+/**
+ * This class is used to represent a set of cards as a 52-bit mask, one bit per
+ * card. Bits are laid out in the Big Two order (i.e. the Three of Diamonds is
+ * bit 0 and the Two of Spades is bit 51), so iterating the set bits from low to
+ * high visits the cards in the same order as sorting BigTwoCard objects.
+ * Adding, removing and testing a card take constant time and never allocate.
+ *
+ * @author Chan Sze Wing
+ */
+public class BigTwoCardSet implements Serializable {
+	private static final long serialVersionUID = 4518369722065284737L;
+	/**
+	 * The number of distinct cards (and bits) in a set.
+	 */
+	public static final int NUM_OF_CARDS = 52;
+	/**
+	 * The mask with all 52 cards set.
+	 */
+	public static final long FULL_MASK = (1L << NUM_OF_CARDS) - 1;
+
+	private long mask;
+
+	/**
+	 * Creates and returns an empty set of cards.
+	 */
+	public BigTwoCardSet() {
+		this.mask = 0L;
+	}
+
+	/**
+	 * Creates and returns a set of cards from a bit mask.
+	 *
+	 * @param mask the 52-bit mask of the cards in the set
+	 */
+	public BigTwoCardSet(long mask) {
+		this.mask = mask & FULL_MASK;
+	}
+
+	/**
+	 * Creates and returns a set holding all the cards in the specified list.
+	 *
+	 * @param cards the list of cards to be added to the set
+	 */
+	public BigTwoCardSet(CardList cards) {
+		this.mask = maskOf(cards);
+	}
+
+	/**
+	 * Returns the bit index of the specified card in the Big Two order.
+	 *
+	 * @param card the card
+	 * @return an int value between 0 and 51, where rank is the major key ('3'
+	 *         lowest, '2' highest) and suit is the minor key
+	 */
+	public static int indexOf(Card card) {
+		return indexOf(card.getSuit(), card.getRank());
+	}
+
+	/**
+	 * Returns the bit index of the card with the specified suit and rank.
+	 *
+	 * @param suit an int value between 0 and 3 representing the suit of a card
+	 * @param rank an int value between 0 and 12 representing the rank of a card
+	 * @return an int value between 0 and 51 representing the bit index
+	 */
+	public static int indexOf(int suit, int rank) {
+		return bigTwoRank(rank) * 4 + suit;
+	}
+
+	/**
+	 * Returns the rank of a card in the Big Two order.
+	 *
+	 * @param rank an int value between 0 and 12 representing the rank of a card
+	 *             ('A' = 0, '2' = 1, ..., 'K' = 12)
+	 * @return an int value between 0 and 12 where '3' = 0, ..., 'A' = 11 and '2' =
+	 *         12
+	 */
+	public static int bigTwoRank(int rank) {
+		return (rank + 11) % 13;
+	}
+
+	/**
+	 * Returns the suit of the card at the specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return an int value between 0 and 3 representing the suit of the card
+	 */
+	public static int suitOf(int index) {
+		return index & 3;
+	}
+
+	/**
+	 * Returns the rank of the card at the specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return an int value between 0 and 12 representing the rank of the card
+	 *         ('A' = 0, '2' = 1, ..., 'K' = 12)
+	 */
+	public static int rankOf(int index) {
+		return ((index >>> 2) + 2) % 13;
+	}
+
+	/**
+	 * Returns the card at the specified bit index.
+	 *
+	 * @param index the bit index of the card
+	 * @return the BigTwoCard at the specified bit index
+	 */
+	public static BigTwoCard cardOf(int index) {
+		return BigTwoCard.valueOf(suitOf(index), rankOf(index));
+	}
+
+	/**
+	 * Returns the bit mask of the cards in the specified list.
+	 *
+	 * @param cards the list of cards
+	 * @return the 52-bit mask of the cards in the list
+	 */
+	public static long maskOf(CardList cards) {
+		long mask = 0L;
+		for (int i = 0; i < cards.size(); i++) {
+			mask |= 1L << indexOf(cards.getCard(i));
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the bit mask of this set.
+	 *
+	 * @return the 52-bit mask of the cards in this set
+	 */
+	public long getMask() {
+		return mask;
+	}
+
+	/**
+	 * Adds the specified card to this set.
+	 *
+	 * @param card the card to be added
+	 * @return true if this set did not already contain the card; otherwise false
+	 */
+	public boolean addCard(Card card) {
+		long bit = 1L << indexOf(card);
+		boolean absent = (mask & bit) == 0;
+		mask |= bit;
+		return absent;
+	}
+
+	/**
+	 * Removes the specified card from this set.
+	 *
+	 * @param card the card to be removed
+	 * @return true if this set contained the card; otherwise false
+	 */
+	public boolean removeCard(Card card) {
+		long bit = 1L << indexOf(card);
+		boolean present = (mask & bit) != 0;
+		mask &= ~bit;
+		return present;
+	}
+
+	/**
+	 * Returns true if this set contains the specified card.
+	 *
+	 * @param card the card whose presence in this set is to be tested
+	 * @return true if this set contains the card; otherwise false
+	 */
+	public boolean contains(Card card) {
+		return (mask & (1L << indexOf(card))) != 0;
+	}
+
+	/**
+	 * Returns true if this set contains all the cards in the specified set.
+	 *
+	 * @param cards the set of cards to be tested
+	 * @return true if every card of the specified set is in this set; otherwise
+	 *         false
+	 */
+	public boolean containsAll(BigTwoCardSet cards) {
+		return (mask & cards.mask) == cards.mask;
+	}
+
+	/**
+	 * Removes all the cards in the specified set from this set.
+	 *
+	 * @param cards the set of cards to be removed
+	 */
+	public void removeAll(BigTwoCardSet cards) {
+		mask &= ~cards.mask;
+	}
+
+	/**
+	 * Removes all cards from this set.
+	 */
+	public void removeAllCards() {
+		mask = 0L;
+	}
+
+	/**
+	 * Returns true if this set contains no cards.
+	 *
+	 * @return true if this set contains no cards; otherwise false
+	 */
+	public boolean isEmpty() {
+		return mask == 0L;
+	}
+
+	/**
+	 * Returns the number of cards in this set.
+	 *
+	 * @return the number of cards in this set
+	 */
+	public int size() {
+		return Long.bitCount(mask);
+	}
+
+	/**
+	 * Returns the bit index of the first card in this set at or after the
+	 * specified bit index. Cards can be visited in the Big Two order with
+	 * <code>for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1))</code>.
+	 *
+	 * @param from the bit index to start searching from
+	 * @return the bit index of the next card, or -1 if there is no such card
+	 */
+	public int nextIndex(int from) {
+		if (from >= NUM_OF_CARDS) {
+			return -1;
+		}
+		long rest = mask & (-1L << from);
+		return (rest == 0L) ? -1 : Long.numberOfTrailingZeros(rest);
+	}
+
+	/**
+	 * Returns the cards in this set as a list sorted in the Big Two order.
+	 *
+	 * @return a list of the cards in this set
+	 */
+	public CardList toCardList() {
+		CardList cards = new CardList();
+		for (int i = nextIndex(0); i >= 0; i = nextIndex(i + 1)) {
+			cards.addCard(cardOf(i));
+		}
+		return cards;
+	}
+
+	/**
+	 * Indicates whether the specified set holds the same cards as this one.
+	 *
+	 * @param obj the reference object with which to compare
+	 * @return true if the specified object is a set with the same cards; otherwise
+	 *         false
+	 */
+	public boolean equals(Object obj) {
+		return (obj instanceof BigTwoCardSet) && ((BigTwoCardSet) obj).mask == mask;
+	}
+
+	/**
+	 * Returns a hash code value for the set.
+	 *
+	 * @return a hash code value for the set
+	 */
+	public int hashCode() {
+		return Long.hashCode(mask);
+	}
+
+	/**
+	 * Returns a string representation of the cards in the set
+	 *
+	 * @return a string representation of the cards in the set
+	 */
+	public String toString() {
+		return toCardList().toString();
+	}
+}
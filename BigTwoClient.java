@@ -1,12 +1,29 @@
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.swing.SwingUtilities;
 
 
 /**
  * This class is used for modeling model a Big Two game client that is 
  * responsible for establishing a connection and communicating with
  * the Big Two game server.
+ * <p>
+ * Messages are sent by a sender thread of the connection, so that the thread
+ * calling sendMessage() (usually the event dispatch thread) never waits for
+ * the network. sendMessageAsync() returns a future of the reply of the
+ * server to a MOVE or MSG message. Likewise, the messages received are
+ * decoded by a reader thread and applied to the game by a message thread, so
+ * that neither the reader nor the event dispatch thread waits for the other;
+ * the GUI is updated on the event dispatch thread.
  * 
  * @author Chan Sze Wing
  *
@@ -15,12 +32,24 @@ public class BigTwoClient implements NetworkGame {
 	private BigTwo game;
 	private BigTwoGUI gui;
 	private Socket sock; // socket connection
-	private ObjectOutputStream oos; // for sending message to server
+	private volatile ClientSender sender; // sends the messages to server
+	private Thread messageThread; // applies the messages received
+	private boolean binaryProtocol = false; // wire format of the messages
 	private int playerID; // player index
 	private String playerName;
+	private int roomID = CardGameServer.DEFAULT_ROOM_ID; // room to join
 	// hardrcode IP address and TCP port
 	private String serverIP = "127.0.0.1"; 
 	private int serverPort = 2396;
+	// messages received and waiting for the message thread
+	private final LinkedBlockingQueue<GameMessage> inbound = new LinkedBlockingQueue<GameMessage>();
+	// MOVE and MSG messages sent and waiting for the reply of the server, in
+	// the order they were sent (guarded by the lock of pendingReplies)
+	private final ArrayDeque<OutgoingMessage> pendingReplies = new ArrayDeque<OutgoingMessage>();
+	// time from sendMessage() until a message is flushed to the socket
+	private final AtomicLong numOfMessagesSent = new AtomicLong();
+	private final AtomicLong totalSendLatency = new AtomicLong(); // in ns
+	private final AtomicLong maxSendLatency = new AtomicLong(); // in ns
 	
 	/**
 	 * Constructor for creating a Big Two client.
@@ -73,6 +102,47 @@ public class BigTwoClient implements NetworkGame {
 		this.playerName = playerName;
 	}
 
+	/**
+	 * Returns the ID of the room (table) joined on the server.
+	 * 
+	 * @return the ID of the room
+	 */
+	public int getRoomID() {
+		return this.roomID;
+	}
+
+	/**
+	 * Sets the ID of the room (table) to be joined on the server.
+	 * 
+	 * @param roomID
+	 *            the ID of the room
+	 */
+	public void setRoomID(int roomID) {
+		this.roomID = roomID;
+	}
+
+	/**
+	 * Returns true if the messages are sent in the compact binary format of
+	 * CardGameCodec instead of Java serialization.
+	 * 
+	 * @return true if the binary format is used
+	 */
+	public boolean isBinaryProtocol() {
+		return this.binaryProtocol;
+	}
+
+	/**
+	 * Selects the wire format of the messages sent to the server (the server
+	 * answers in the same format). Takes effect on the next connect().
+	 * 
+	 * @param binaryProtocol
+	 *            true for the compact binary format; false for Java
+	 *            serialization
+	 */
+	public void setBinaryProtocol(boolean binaryProtocol) {
+		this.binaryProtocol = binaryProtocol;
+	}
+
 	/**
 	 * Returns the IP address of the server.
 	 * 
@@ -111,16 +181,71 @@ public class BigTwoClient implements NetworkGame {
 		this.serverPort = serverPort;
 	}
 
+	/**
+	 * Returns the number of messages sent to the server.
+	 * 
+	 * @return the number of messages flushed to the socket
+	 */
+	public long getNumOfMessagesSent() {
+		return this.numOfMessagesSent.get();
+	}
+
+	/**
+	 * Returns the average time from sendMessage() until a message is flushed
+	 * to the socket.
+	 * 
+	 * @return the average enqueue-to-wire latency in nanoseconds
+	 */
+	public long getAverageSendLatency() {
+		long n = this.numOfMessagesSent.get();
+		return (n == 0) ? 0 : this.totalSendLatency.get() / n;
+	}
+
+	/**
+	 * Returns the longest time from sendMessage() until a message is flushed
+	 * to the socket.
+	 * 
+	 * @return the maximum enqueue-to-wire latency in nanoseconds
+	 */
+	public long getMaxSendLatency() {
+		return this.maxSendLatency.get();
+	}
+
+	/**
+	 * Returns the number of messages waiting to be sent.
+	 * 
+	 * @return the number of queued messages
+	 */
+	public int getNumOfQueuedMessages() {
+		ClientSender sender = this.sender;
+		return (sender == null) ? 0 : sender.queue.size();
+	}
+
 	/**
 	 * Makes a network connection to the server.
 	 */
 	public void connect() {
 		
 		try {
+			if (sender != null) {
+				sender.close();
+				failPendingReplies(new IOException("Connection closed"));
+			}
 			sock = new Socket(serverIP, serverPort);
-			oos = new ObjectOutputStream(sock.getOutputStream());
-			Thread recieveThread = new Thread(new ServerHandler());
+			sender = new ClientSender(CardGameCodec.newWriter(
+					new BufferedOutputStream(sock.getOutputStream()), binaryProtocol));
+			Thread sendThread = new Thread(sender, "BigTwoClient sender");
+			sendThread.setDaemon(true);
+			sendThread.start();
+			Thread recieveThread = new Thread(new ServerHandler(sock));
 			recieveThread.start();
+			if (messageThread == null) {
+				messageThread = new Thread(new MessageProcessor(), "BigTwoClient messages");
+				messageThread.setDaemon(true);
+				messageThread.start();
+			}
+			// asks for a seat in the room
+			sendMessage(new CardGameMessage(CardGameMessage.JOIN, this.roomID, this.playerName));
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
@@ -128,74 +253,89 @@ public class BigTwoClient implements NetworkGame {
 	}
 
 	/**
-	 * Parses the specified message received from the server.
+	 * Parses the specified message received from the server. The state of
+	 * the game is updated while holding its lock, and the GUI is updated on
+	 * the event dispatch thread afterwards. Called by the message thread of
+	 * the connection.
 	 * 
 	 * @param message
 	 *            the specified message received from the server
 	 */
 	public void parseMessage(GameMessage message) {
 		try {
-			// PLAYER_LIST
-			if (message.getType() == CardGameMessage.PLAYER_LIST) {
-				this.playerID = message.getPlayerID();
-				for (int i = 0; i < this.game.getNumOfPlayers(); i++) {
-					this.game.getPlayerList().get(i).setName(((String[]) message.getData())[i]);
+			synchronized (this.game) {
+				// PLAYER_LIST
+				if (message.getType() == CardGameMessage.PLAYER_LIST) {
+					this.playerID = message.getPlayerID();
+					for (int i = 0; i < this.game.getNumOfPlayers(); i++) {
+						this.game.getPlayerList().get(i).setName(((String[]) message.getData())[i]);
+					}
 				}
-
-				sendMessage(new CardGameMessage(CardGameMessage.JOIN, -1, this.playerName));
-			}
-			// JOIN
-			else if (message.getType() == CardGameMessage.JOIN) {
-				this.game.getPlayerList().get(message.getPlayerID()).setName((String) message.getData());
-				this.gui.constructPlayerPanels();
-				this.gui.repaint();
-				if (message.getPlayerID() == this.playerID) {
+				// JOIN
+				else if (message.getType() == CardGameMessage.JOIN) {
+					this.game.getPlayerList().get(message.getPlayerID()).setName((String) message.getData());
+					repaintLater();
+					if (message.getPlayerID() == this.playerID) {
+						sendMessage(new CardGameMessage(CardGameMessage.READY, -1, null));
+					}			
+				}
+				// FULL
+				else if (message.getType() == CardGameMessage.FULL) {
+					printMsgLater(String.format("Room %d is full, cannot join game.\n", this.roomID));
+				}
+				// QUIT
+				else if (message.getType() == CardGameMessage.QUIT) {
+					setEnabledLater(false);
+					printMsgLater(String.format("Game stop (%s leave game)\n", (String) message.getData()));
+					this.game.getPlayerList().get(message.getPlayerID()).setName("");
 					sendMessage(new CardGameMessage(CardGameMessage.READY, -1, null));
-				}			
-			}
-			// FULL
-			else if (message.getType() == CardGameMessage.FULL) {
-				this.gui.printMsg("Server is full, cannot join game.\n");
-			}
-			// QUIT
-			else if (message.getType() == CardGameMessage.QUIT) {
-				this.gui.disable();
-				this.gui.printMsg(String.format("Game stop (%s leave game)\n", (String) message.getData()));
-				this.game.getPlayerList().get(message.getPlayerID()).setName("");
-				this.gui.constructPlayerPanels();
-				this.gui.repaint();
-				sendMessage(new CardGameMessage(CardGameMessage.READY, -1, null));
-			}
-			// READY
-			else if (message.getType() == CardGameMessage.READY) {
-				this.gui.printMsg(String.format("%s is ready.\n", this.game.getPlayerList().get(message.getPlayerID()).getName()));
-			}
-			// START
-			else if (message.getType() == CardGameMessage.START) {
-				this.gui.reset();
-				this.game.start((Deck) message.getData());
-				if (this.game.getCurrentPlayerIdx() == this.playerID) {
-					this.gui.enable();
 				}
-				else {
-					this.gui.disable();
+				// READY
+				else if (message.getType() == CardGameMessage.READY) {
+					printMsgLater(String.format("%s is ready.\n", this.game.getPlayerList().get(message.getPlayerID()).getName()));
 				}
-				this.gui.repaint();
-			}
-			// MOVE
-			else if (message.getType() == CardGameMessage.MOVE) {
-				this.game.checkMove(message.getPlayerID(), (int[]) message.getData());
-				if (this.game.getCurrentPlayerIdx() == this.playerID) {
-					this.gui.enable();
+				// START
+				else if (message.getType() == CardGameMessage.START) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							gui.reset();
+						}
+					});
+					this.game.start((Deck) message.getData());
+					setEnabledLater(this.game.getCurrentPlayerIdx() == this.playerID);
 				}
-				else {
-					this.gui.disable();
+				// MOVE (already checked by the server)
+				else if (message.getType() == CardGameMessage.MOVE) {
+					this.game.applyMove(message.getPlayerID(), (int[]) message.getData());
+					// completed once the move is applied to the game
+					if (message.getPlayerID() == this.playerID) {
+						completeReply(CardGameMessage.MOVE, true);
+					}
+					setEnabledLater(this.game.getCurrentPlayerIdx() == this.playerID);
+				}
+				// INVALID_MOVE (our move is rejected by the server)
+				else if (message.getType() == CardGameMessage.INVALID_MOVE) {
+					completeReply(CardGameMessage.MOVE, false);
+					final int playerIdx = message.getPlayerID();
+					final int[] cardIdx = (int[]) message.getData();
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							gui.invalidMove(playerIdx, cardIdx);
+						}
+					});
+				}
+				// MSG
+				else if (message.getType() == CardGameMessage.MSG) {
+					if (message.getPlayerID() == this.playerID) {
+						completeReply(CardGameMessage.MSG, true);
+					}
+					final String chat = (String) message.getData();
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							gui.printChat(chat);
+						}
+					});
 				}
-				this.gui.repaint();
-			}
-			// MSG
-			else if (message.getType() == CardGameMessage.MSG) {
-				this.gui.printChat((String) message.getData());
 			}
 			
 		} catch (Exception ex) {
@@ -204,38 +344,273 @@ public class BigTwoClient implements NetworkGame {
 		
 	}
 
+	// Prints the specified string to the message area on the EDT
+	private void printMsgLater(final String msg) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				gui.printMsg(msg);
+			}
+		});
+	}
+
+	// Enables or disables user interactions (and repaints) on the EDT
+	private void setEnabledLater(final boolean enabled) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (enabled) {
+					gui.enable();
+				}
+				else {
+					gui.disable();
+				}
+			}
+		});
+	}
+
+	// Repaints the GUI on the EDT (the repaints are coalesced by the GUI)
+	private void repaintLater() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				gui.repaint();
+			}
+		});
+	}
+
 	/**
-	 * Sends the specified message to the server.
+	 * Sends the specified message to the server. The message is queued for
+	 * the sender thread, so this method never blocks; a failure to send it
+	 * is only printed.
 	 * 
 	 * @param message
 	 *            the specified message to be sent the server
 	 */
 	public void sendMessage(GameMessage message) {
-		try {
-			oos.writeObject(message);
-		} catch (Exception ex) {
-			ex.printStackTrace();
+		sendMessageAsync(message).exceptionally(new Function<Throwable, Boolean>() {
+			public Boolean apply(Throwable ex) {
+				ex.printStackTrace();
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Queues the specified message for the server and returns a future of
+	 * its result. The future of a MOVE message completes when the server
+	 * broadcasts the move (true) or rejects it (false), and that of a MSG
+	 * message when the server broadcasts it (true); any other message
+	 * completes (true) once it has been flushed to the socket. The future
+	 * completes exceptionally if the message cannot be sent or the
+	 * connection is lost before the reply. It is completed on a network
+	 * thread, so a Swing component must not be updated from it directly.
+	 * 
+	 * @param message
+	 *            the specified message to be sent the server
+	 * @return the future of the result of the message
+	 */
+	public CompletableFuture<Boolean> sendMessageAsync(GameMessage message) {
+		OutgoingMessage outgoing = new OutgoingMessage(message);
+		ClientSender sender = this.sender;
+		if (sender == null) {
+			outgoing.future.completeExceptionally(new IOException("Not connected"));
+			return outgoing.future;
+		}
+		// queued under the lock, so that the replies are expected in the
+		// order the messages are sent
+		synchronized (pendingReplies) {
+			if (sender.offer(outgoing) && outgoing.awaitsReply) {
+				pendingReplies.add(outgoing);
+			}
 		}
+		return outgoing.future;
 	}
-	
+
+	// Completes the future of the oldest message of the specified type
+	// waiting for a reply
+	private void completeReply(int type, boolean accepted) {
+		OutgoingMessage outgoing = null;
+		synchronized (pendingReplies) {
+			Iterator<OutgoingMessage> it = pendingReplies.iterator();
+			while (it.hasNext() && outgoing == null) {
+				OutgoingMessage m = it.next();
+				if (m.future.isDone()) {
+					it.remove(); // failed before it was sent
+				} else if (m.message.getType() == type) {
+					it.remove();
+					outgoing = m;
+				}
+			}
+		}
+		if (outgoing != null) {
+			outgoing.future.complete(accepted);
+		}
+	}
+
+	// Fails the futures of all the messages waiting for a reply
+	private void failPendingReplies(IOException ex) {
+		ArrayList<OutgoingMessage> failed;
+		synchronized (pendingReplies) {
+			failed = new ArrayList<OutgoingMessage>(pendingReplies);
+			pendingReplies.clear();
+		}
+		for (OutgoingMessage outgoing : failed) {
+			outgoing.future.completeExceptionally(ex);
+		}
+	}
+
+	// Records the enqueue-to-wire latency of a message
+	private void recordSendLatency(long latency) {
+		numOfMessagesSent.incrementAndGet();
+		totalSendLatency.addAndGet(latency);
+		long max;
+		while (latency > (max = maxSendLatency.get())
+				&& !maxSendLatency.compareAndSet(max, latency)) {
+		}
+	}
+
+	/**
+	 * A message queued for the server, with the time it was queued and the
+	 * future of its result.
+	 * 
+	 * @author Chan Sze Wing
+	 *
+	 */
+	class OutgoingMessage {
+		private final GameMessage message;
+		private final long enqueueTime = System.nanoTime();
+		private final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+		private final boolean awaitsReply;
+
+		OutgoingMessage(GameMessage message) {
+			this.message = message;
+			this.awaitsReply = (message != null
+					&& (message.getType() == CardGameMessage.MOVE
+					|| message.getType() == CardGameMessage.MSG));
+		}
+	}
+
+	/**
+	 * Send the queued messages to the game server. The messages queued while
+	 * a batch is being written are written together and flushed once.
+	 * 
+	 * @author Chan Sze Wing
+	 *
+	 */
+	class ClientSender implements Runnable {
+		private final MessageWriter writer;
+		private final LinkedBlockingQueue<OutgoingMessage> queue = new LinkedBlockingQueue<OutgoingMessage>();
+		private volatile boolean closed = false;
+
+		ClientSender(MessageWriter writer) {
+			this.writer = writer;
+		}
+
+		// Queues a message, or fails it if the sender is closed
+		boolean offer(OutgoingMessage outgoing) {
+			queue.add(outgoing);
+			// a closed sender fails the messages it finds in the queue, but
+			// not those queued after it has looked for the last time
+			if (closed && queue.remove(outgoing)) {
+				outgoing.future.completeExceptionally(new IOException("Connection closed"));
+				return false;
+			}
+			return true;
+		}
+
+		// Stops the sender, failing the messages not sent yet
+		void close() {
+			closed = true;
+			queue.add(new OutgoingMessage(null)); // wakes up the sender
+		}
+
+		public void run() {
+			ArrayList<OutgoingMessage> batch = new ArrayList<OutgoingMessage>();
+			try {
+				while (!closed) {
+					batch.add(queue.take());
+					queue.drainTo(batch);
+					for (OutgoingMessage outgoing : batch) {
+						if (outgoing.message != null) {
+							writer.writeMessage(outgoing.message);
+						}
+					}
+					writer.flush();
+					long now = System.nanoTime();
+					for (OutgoingMessage outgoing : batch) {
+						if (outgoing.message != null) {
+							recordSendLatency(now - outgoing.enqueueTime);
+							if (!outgoing.awaitsReply) {
+								outgoing.future.complete(true);
+							}
+						}
+					}
+					batch.clear();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (IOException ex) {
+				closed = true;
+				for (OutgoingMessage outgoing : batch) {
+					outgoing.future.completeExceptionally(ex);
+				}
+				failPendingReplies(ex);
+			}
+			// fails the messages queued after the sender was closed
+			IOException closedEx = new IOException("Connection closed");
+			queue.drainTo(batch);
+			for (OutgoingMessage outgoing : batch) {
+				outgoing.future.completeExceptionally(closedEx);
+			}
+		}
+	}
+
+	/**
+	 * Apply the messages received from the game server, in order.
+	 * 
+	 * @author Chan Sze Wing
+	 *
+	 */
+	class MessageProcessor implements Runnable {
+		public void run() {
+			try {
+				while (true) {
+					parseMessage(inbound.take());
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	/**
-	 * Receive and handle messages from the game server
+	 * Receive messages from the game server
 	 * 
 	 * @author Chan Sze Wing
 	 *
 	 */
 	class ServerHandler implements Runnable {
+		private final Socket sock; // the connection of this handler
+
+		ServerHandler(Socket sock) {
+			this.sock = sock;
+		}
+
 		public void run() {
 			GameMessage message;
 			try {
-				// input stream for the receive GameMessage object from server
-				ObjectInputStream ois = new ObjectInputStream(sock.getInputStream());
-				while ((message = (GameMessage) ois.readObject()) != null) {
-					parseMessage(message);
+				// reader for the receive GameMessage object from server
+				MessageReader reader = CardGameCodec.newReader(new BufferedInputStream(sock.getInputStream()));
+				while ((message = reader.readMessage()) != null) {
+					// the message thread applies it, so a burst of messages
+					// never stalls the reading of the socket
+					inbound.add(message);
 				}
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
+			// no reply will come for the messages sent on this connection
+			if (sock == BigTwoClient.this.sock) {
+				failPendingReplies(new IOException("Connection lost"));
+			}
 		}
 	}
 	
@@ -12,8 +12,7 @@ public class BigTwoDeck extends Deck {
         removeAllCards();
         for (int i = 0; i < 4; i++) {
             for (int j = 0; j < 13; j++) {
-                BigTwoCard card = new BigTwoCard(i, j);
-                addCard(card);
+                addCard(BigTwoCard.valueOf(i, j));
             }
         }
     }
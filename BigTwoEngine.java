@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+
+/**
+ * This class is used to model the rules and state of a Big Two card game
+ * without any user interface or network connection. Changes of the game are
+ * reported to the registered BigTwoListener objects, so the same engine can
+ * drive a GUI, a game server or a simulator.
+ *
+ * @author Chan Sze Wing
+ */
+public class BigTwoEngine implements CardGame {
+    private int numOfPlayers = 4;
+    private Deck deck = new Deck();
+    private ArrayList<CardGamePlayer> playerList = new ArrayList<CardGamePlayer>(this.numOfPlayers);
+    private ArrayList<Hand> handOnTable = new ArrayList<Hand>();
+    private int currentPlayerIdx;
+    private ArrayList<BigTwoListener> listeners = new ArrayList<BigTwoListener>();
+
+    /**
+     * Create a Big Two card game with 4 players and no listeners
+     */
+    public BigTwoEngine() {
+        for (int i = 0; i < this.numOfPlayers; i++) {
+            CardGamePlayer temp = new CardGamePlayer();
+            this.playerList.add(temp);
+        }
+    }
+
+    /**
+     * Register a listener for the events of this game
+     *
+     * @param listener the listener to be notified
+     */
+    public void addListener(BigTwoListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener of this game
+     *
+     * @param listener the listener to be removed
+     */
+    public void removeListener(BigTwoListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of players
+     *
+     * @return an integer of the number of players
+     */
+    public int getNumOfPlayers() {
+        return this.numOfPlayers;
+    }
+
+    /**
+     * Return the deck of cards
+     *
+     * @return a deck object representing the deck of cards
+     */
+    public Deck getDeck() {
+        return this.deck;
+    }
+
+    /**
+     * Return a list of player
+     *
+     * @return an arrayList of player
+     */
+    public ArrayList<CardGamePlayer> getPlayerList() {
+        return this.playerList;
+    }
+
+    /**
+     * Return a list of hands played on the table
+     *
+     * @return a arrayList hands representing the hands played on the table,
+     * with the last hand the most recent one on the table
+     */
+    public ArrayList<Hand> getHandsOnTable() {
+        return this.handOnTable;
+    }
+
+    /**
+     * Return the index of the current player
+     *
+     * @return an integer of the index of the current player
+     */
+    public int getCurrentPlayerIdx() {
+        return currentPlayerIdx;
+    }
+
+    /**
+     * Return a valid hand from a list of cards
+     *
+     * @param player the player who holds the cards
+     * @param cards the list of card indices selected by the player
+     * @return	the object of the specific hand type compose by the cards, or
+     * null if no valid hand can be composed
+     */
+    public static Hand composeHand(CardGamePlayer player, CardList cards) {
+    	// classify the cards with one table lookup, then build only that hand
+    	switch (HandClassifier.typeOf(HandClassifier.classify(cards))) {
+    	case HandClassifier.SINGLE:
+    		return new Single(player, cards);
+    	case HandClassifier.PAIR:
+    		return new Pair(player, cards);
+    	case HandClassifier.TRIPLE:
+    		return new Triple(player, cards);
+    	case HandClassifier.STRAIGHT:
+    		return new Straight(player, cards);
+    	case HandClassifier.FLUSH:
+    		return new Flush(player, cards);
+    	case HandClassifier.FULL_HOUSE:
+    		return new FullHouse(player, cards);
+    	case HandClassifier.QUAD:
+    		return new Quad(player, cards);
+    	case HandClassifier.STRAIGHT_FLUSH:
+    		return new StraightFlush(player, cards);
+    	default:
+    		return null;
+    	}
+    }
+
+    /**
+     * Start / Restart the game
+     *
+     * @param deck the shuffled deck of card
+     */
+    public void start(Deck deck) {
+        // remove all cards from table
+        this.handOnTable.clear();
+
+        // remove all cards from players
+        for (int i = 0; i < this.numOfPlayers; i++) {
+        	this.playerList.get(i).removeAllCards();
+        }
+
+        // distribute cards to player & find player who holds the Three of Diamonds
+        for (int i = 0; i < deck.size(); i += 4) {
+        	for (int j = 0; j < this.numOfPlayers; j++) {
+        		if ((deck.getCard(i+j).getRank() == 2) && (deck.getCard(i+j).getSuit() == 0)) {
+        			this.currentPlayerIdx = j;
+        		}
+        		this.playerList.get(j).addCard(deck.getCard(i+j));
+        	}
+        }
+
+        for (int i = 0; i < this.numOfPlayers; i++) {
+        	this.playerList.get(i).getCardsInHand().sort();
+        }
+
+        for (int i = 0; i < this.listeners.size(); i++) {
+        	this.listeners.get(i).gameStarted(this.currentPlayerIdx);
+        }
+    }
+
+    /**
+     * Make a move by a player with a list of card indices
+     * (a local game checks the move immediately)
+     *
+     * @param playerIdx the index of the player
+     * @param cardIdx the list of card indices selected by the player for the move
+     */
+    public void makeMove(int playerIdx, int[] cardIdx) {
+    	checkMove(playerIdx, cardIdx);
+    }
+
+    /**
+     * Check is the move made by a player valid, and play it if so
+     *
+     * @param playerIdx the index of the player
+     * @param cardIdx the list of card indices selected by the player for the move
+     */
+    public void checkMove(int playerIdx, int[] cardIdx) {
+    	CardGamePlayer player = this.playerList.get(playerIdx);
+    	Hand player_hand = (cardIdx == null) ? null : composeMove(player, cardIdx);
+    	if (!isLegal(playerIdx, cardIdx, player_hand)) {
+    		fireInvalidMove(playerIdx, cardIdx);
+    		return;
+    	}
+    	play(playerIdx, player_hand);
+    }
+
+    /**
+     * Check is the move made by a player valid, without playing it (a move
+     * is not valid if its indices are not those of distinct cards in the
+     * hand of the player, e.g. in a malformed message)
+     *
+     * @param playerIdx the index of the player
+     * @param cardIdx the list of card indices selected by the player for the move
+     * @return true if the move is legal, otherwise false
+     */
+    public boolean isLegalMove(int playerIdx, int[] cardIdx) {
+    	if (playerIdx < 0 || playerIdx >= this.numOfPlayers) {
+    		return false;
+    	}
+    	Hand player_hand = (cardIdx == null) ? null : composeMove(this.playerList.get(playerIdx), cardIdx);
+    	return isLegal(playerIdx, cardIdx, player_hand);
+    }
+
+    /**
+     * Play a move which is known to be legal (e.g. accepted by the game
+     * server) without checking it again
+     *
+     * @param playerIdx the index of the player
+     * @param cardIdx the list of card indices selected by the player for the move
+     */
+    public void applyMove(int playerIdx, int[] cardIdx) {
+    	CardGamePlayer player = this.playerList.get(playerIdx);
+    	play(playerIdx, (cardIdx == null) ? null : composeMove(player, cardIdx));
+    }
+
+    /**
+     * Check if the game ends (i.e. any one of the players have no more cards)
+     *
+     * @return true if game ends, otherwise false
+     */
+    public boolean endOfGame() {
+    	for (int i = 0; i < this.numOfPlayers; i++) {
+    		if (this.playerList.get(i).getNumOfCards() == 0) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    // Transform a list of card indices to a specific type of hand (null if
+    // the list is empty, or an index is not that of a card in the hand of the
+    // player, or is repeated)
+    private static Hand composeMove(CardGamePlayer player, int[] cardIdx) {
+    	CardList cards = player.getCardsInHand();
+    	if (cardIdx.length == 0) {
+    		return null;
+    	}
+    	long selected = 0; // bit mask of the indices seen (a hand has at most 52 cards)
+    	CardList player_card = new CardList();
+    	for (int i = 0; i < cardIdx.length; i++) {
+    		int idx = cardIdx[i];
+    		if (idx < 0 || idx >= cards.size() || (selected & (1L << idx)) != 0) {
+    			return null;
+    		}
+    		selected |= 1L << idx;
+    		player_card.addCard(cards.getCard(idx));
+    	}
+    	return composeHand(player, player_card);
+    }
+
+    // Check a move against the current state (player_hand is null for a pass
+    // or for an invalid card combination)
+    private boolean isLegal(int playerIdx, int[] cardIdx, Hand player_hand) {
+    	// only the current player can move, and only before the game ends
+    	if ((playerIdx != this.currentPlayerIdx) || this.endOfGame()) {
+    		return false;
+    	}
+
+    	// get last hand on table
+    	Hand table_hand = (this.handOnTable.isEmpty()) ? null : this.handOnTable.get(this.handOnTable.size() - 1);
+    	CardGamePlayer player = this.playerList.get(playerIdx);
+
+    	// pass
+    	if (cardIdx == null) {
+    		// first player or player of last hand --> canNOT pass
+    		return (table_hand != null) && (table_hand.getPlayer() != player);
+    	}
+    	// invalid card combination
+    	if (player_hand == null) {
+    		return false;
+    	}
+    	// first hand must include the Three of Diamonds
+    	if (table_hand == null) {
+    		return player_hand.contains(BigTwoCard.valueOf(0, 2));
+    	}
+    	// all other player pass and loop back
+    	if (table_hand.getPlayer() == player) {
+    		return true;
+    	}
+    	// same num of cards as, and beats, the hand on table
+    	return player_hand.beats(table_hand);
+    }
+
+    // Play a legal move (player_hand is null for a pass)
+    private void play(int playerIdx, Hand player_hand) {
+    	if (player_hand == null) {
+    		fireMovePlayed(playerIdx, null);
+    		nextPlayer();
+    		return;
+    	}
+
+    	this.playerList.get(playerIdx).removeCards(player_hand);
+    	this.handOnTable.add(player_hand);
+    	fireMovePlayed(playerIdx, player_hand);
+
+    	// end of game
+    	if (this.endOfGame()) {
+    		for (int i = 0; i < this.listeners.size(); i++) {
+    			this.listeners.get(i).gameEnded(playerIdx);
+    		}
+    		return;
+    	}
+    	// game continues
+    	nextPlayer();
+    }
+
+    // Pass the turn to the next player
+    private void nextPlayer() {
+    	this.currentPlayerIdx = (this.currentPlayerIdx + 1) % this.numOfPlayers;
+    	for (int i = 0; i < this.listeners.size(); i++) {
+    		this.listeners.get(i).turnChanged(this.currentPlayerIdx);
+    	}
+    }
+
+    private void fireMovePlayed(int playerIdx, Hand hand) {
+    	for (int i = 0; i < this.listeners.size(); i++) {
+    		this.listeners.get(i).movePlayed(playerIdx, hand);
+    	}
+    }
+
+    private void fireInvalidMove(int playerIdx, int[] cardIdx) {
+    	for (int i = 0; i < this.listeners.size(); i++) {
+    		this.listeners.get(i).invalidMove(playerIdx, cardIdx);
+    	}
+    }
+}
@@ -2,22 +2,27 @@ import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 
 
 /**
  *  This class is used for modeling a GUI (graphic user interface) for the Big Two card game.
+ *  The components are created once and updated in place by repaint(), so that only the
+ *  components whose state has changed (e.g. the cards of the player who has just moved
+ *  and the last hand on the table) are repainted.
  * 
  * @author Chan Sze Wing
  *
  */
-public class BigTwoGUI implements CardGameUI{
+public class BigTwoGUI implements CardGameUI, BigTwoListener {
 	private BigTwo game;
 	private final static int MAX_CARD_NUM = 13; // max. no. of cards each player holds
 	private boolean [] selected = new boolean[MAX_CARD_NUM]; // selected cards
 	private int activePlayer = -1; // index of active player
 	private JFrame frame; // main window
 	private JPanel bigTwoPanel;	// main panel (different from requirement -- including chat and msg)
+	private LastHandPanel lastHandPanel; // panel of the last hand on table
 	private JButton playButton, passButton; // play and pass button
 	private JTextArea msgArea, chatArea; // text area for current game status and chat message
 	private JTextField chatInput; // text field for chat message input
@@ -32,6 +37,8 @@ public class BigTwoGUI implements CardGameUI{
 	private boolean active; // determine can the card be selected
 	private BigTwoClient client; // client for this gui
 	private JDialog endDialog; // dialog box for game end
+	private boolean repaintPending = false; // a rebuild is scheduled on the EDT
+	private CompletableFuture<CardImages> images; // images of the cards and avatars (read in the background)
 	
 	/**
 	 * Creates and returns an instance of a BigTwoUI class.
@@ -40,11 +47,15 @@ public class BigTwoGUI implements CardGameUI{
 	 */
 	public BigTwoGUI(BigTwo game) {
 		this.game = game;
+		images = CardImages.load();
 		handsOnTable = game.getHandsOnTable();
 		playerList = game.getPlayerList();
 		
-		frame = new JFrame("Big Two");
-		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		// no window in a headless environment (the panels can still be painted off-screen)
+		if (!GraphicsEnvironment.isHeadless()) {
+			frame = new JFrame("Big Two");
+			frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		}
 		
 		msgArea = new JTextArea();
 		msgArea.setColumns(40);
@@ -63,6 +74,7 @@ public class BigTwoGUI implements CardGameUI{
 		client = this.game.getClient();
 		
 		chatInput = new JTextField();
+		chatInput.addKeyListener(new ChatInputListener());
 		
 		
 		playButton = new JButton("Play");
@@ -84,17 +96,30 @@ public class BigTwoGUI implements CardGameUI{
 		
 		menuBar.add(gameMenu);
 		
-		frame.setJMenuBar(menuBar);
-		
 		reset();
 		
-		
-		// dummy bigTwoPanel to set minimum window size
+		// the components are created once, and updated by repaint()
+		constructPlayerPanels();
+		lastHandPanel = new LastHandPanel();
 		bigTwoPanel = new BigTwoPanel();
-		frame.add(bigTwoPanel);
-		frame.pack();
-		frame.setVisible(true);
 		
+		if (frame != null) {
+			frame.setJMenuBar(menuBar);
+			frame.add(bigTwoPanel);
+			frame.pack();
+			frame.setVisible(true);
+		}
+		
+		// the cards and avatars are drawn once their images have been read
+		images.thenRun(new Runnable() {
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						bigTwoPanel.repaint();
+					}
+				});
+			}
+		});
 	}
 	
 	// method from CardGameUI interface (javadocs is copied from CardGameUI.java)
@@ -113,15 +138,17 @@ public class BigTwoGUI implements CardGameUI{
 	}
 	
 	/**
-	 * Construct all PlayerPanels
+	 * Construct all PlayerPanels (once; they are updated by repaint())
 	 */
 	public void constructPlayerPanels() {
-		handsOnTable = game.getHandsOnTable();
-		playerList = game.getPlayerList();
-		playerPanels = new ArrayList<PlayerPanel>(this.game.getNumOfPlayers());
-		for (int i = 0; i < this.game.getNumOfPlayers(); i++) {
-			PlayerPanel temp = new PlayerPanel(i);
-			playerPanels.add(temp);
+		// the game is updated by the network thread of the client
+		synchronized (game) {
+			playerList = game.getPlayerList();
+			playerPanels = new ArrayList<PlayerPanel>(this.game.getNumOfPlayers());
+			for (int i = 0; i < this.game.getNumOfPlayers(); i++) {
+				PlayerPanel temp = new PlayerPanel(i);
+				playerPanels.add(temp);
+			}
 		}
 	}
 	
@@ -135,16 +162,49 @@ public class BigTwoGUI implements CardGameUI{
 	}
 	
 	/**
-	 * Repaints the user interface.
+	 * Get the main panel holding all the components (except the menu), e.g. for
+	 * painting it off-screen
+	 * 
+	 * @return the main panel
+	 */
+	public JPanel getBigTwoPanel() {
+		return this.bigTwoPanel;
+	}
+	
+	/**
+	 * Repaints the user interface. The user interface is updated once for
+	 * all the repaints requested before the event dispatch thread gets to it,
+	 * so a burst of moves costs a single update. Must be called on the event
+	 * dispatch thread.
 	 */
 	public void repaint() {
-		handsOnTable = game.getHandsOnTable();
-		playerList = game.getPlayerList();
-		frame.remove(bigTwoPanel);
-		bigTwoPanel = new BigTwoPanel();
-		frame.add(bigTwoPanel);
-		frame.pack();
-		frame.repaint();
+		if (!repaintPending) {
+			repaintPending = true;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					repaintPending = false;
+					update();
+				}
+			});
+		}
+	}
+	
+	// Updates the components from the current state of the game; each component
+	// repaints itself only if its state has changed
+	private void update() {
+		boolean resized = false;
+		synchronized (game) {
+			handsOnTable = game.getHandsOnTable();
+			playerList = game.getPlayerList();
+			for (PlayerPanel playerPanel : playerPanels) {
+				resized |= playerPanel.update();
+			}
+			lastHandPanel.update();
+		}
+		// the window is only resized when a player joins or leaves
+		if (resized && frame != null) {
+			frame.pack();
+		}
 	}
 	
 	/**
@@ -156,7 +216,6 @@ public class BigTwoGUI implements CardGameUI{
 	 */
 	public void printMsg(String msg) {
 		msgArea.append(msg);
-		frame.repaint();
 		msgArea.setCaretPosition(msgArea.getText().length());
 	}
 	
@@ -169,7 +228,6 @@ public class BigTwoGUI implements CardGameUI{
 	public void printChat(String msg) {
 		if (msg.length() != 0) 
 			chatArea.append(msg + "\n");
-		frame.repaint();
 		chatArea.setCaretPosition(chatArea.getText().length());
 	}
 	
@@ -178,7 +236,6 @@ public class BigTwoGUI implements CardGameUI{
 	 */
 	public void clearMsgArea() {
 		this.msgArea.setText("");
-		frame.repaint();
 	}
 	
 	/**
@@ -196,7 +253,7 @@ public class BigTwoGUI implements CardGameUI{
 		playButton.setEnabled(true);
 		passButton.setEnabled(true);
 		active = true;
-		constructPlayerPanels();
+		repaint(); // the cards of the local player are made selectable
 	}
 	
 	/**
@@ -206,7 +263,7 @@ public class BigTwoGUI implements CardGameUI{
 		playButton.setEnabled(false);
 		passButton.setEnabled(false);
 		active = false;
-		constructPlayerPanels();
+		repaint();
 	}
 	
 	/**
@@ -249,7 +306,11 @@ public class BigTwoGUI implements CardGameUI{
 	 * Prompts active player to select cards and make their move.
 	 */
 	public void promptActivePlayer() {
-		printMsg(playerList.get(activePlayer).getName() + "'s turn: \n");
+		String name;
+		synchronized (game) {
+			name = playerList.get(activePlayer).getName();
+		}
+		printMsg(name + "'s turn: \n");
 		
 	}
 	
@@ -262,15 +323,17 @@ public class BigTwoGUI implements CardGameUI{
 		
 		endMsg += "Game ends\n";
 		
-		for (int i = 0; i < game.getNumOfPlayers(); i++) {
-    		if (game.getPlayerList().get(i).getNumOfCards() == 0) {
-    			endMsg += String.format("%s wins the game. \n", game.getPlayerList().get(i).getName());
-    		}
-    		else {
-    			endMsg += String.format("%1$s has %2$d cards in hand.\n", game.getPlayerList().get(i).getName(), game.getPlayerList().get(i).getNumOfCards());
-    		}
-    		
-    	}
+		synchronized (game) {
+			for (int i = 0; i < game.getNumOfPlayers(); i++) {
+	    		if (game.getPlayerList().get(i).getNumOfCards() == 0) {
+	    			endMsg += String.format("%s wins the game. \n", game.getPlayerList().get(i).getName());
+	    		}
+	    		else {
+	    			endMsg += String.format("%1$s has %2$d cards in hand.\n", game.getPlayerList().get(i).getName(), game.getPlayerList().get(i).getNumOfCards());
+	    		}
+	    		
+	    	}
+		}
 				
 		JButton okButton = new JButton("OK");
 		okButton.addActionListener(new OKButtonItemListener());
@@ -314,6 +377,67 @@ public class BigTwoGUI implements CardGameUI{
 		}
 	}
 	
+	// methods from BigTwoListener interface
+	
+	/**
+	 * Show the first player's turn when a game starts.
+	 * 
+	 * @param firstPlayerIdx the index of the player holding the Three of Diamonds
+	 */
+	public void gameStarted(int firstPlayerIdx) {
+		setActivePlayer(firstPlayerIdx);
+		repaint();
+		promptActivePlayer();
+	}
+	
+	/**
+	 * Print the hand played (or the pass) to the message area.
+	 * 
+	 * @param playerIdx the index of the player who makes the move
+	 * @param hand the hand played, or null if the player passes
+	 */
+	public void movePlayed(int playerIdx, Hand hand) {
+		if (hand == null) {
+			printMsg("{Pass}\n");
+		}
+		else {
+			printMsg(String.format("{%1$s} %2$s\n", hand.getType(), hand.toString()));
+		}
+	}
+	
+	/**
+	 * Show ileagal move warning window and repaint.
+	 * 
+	 * @param playerIdx the index of the player who makes the move
+	 * @param cardIdx the list of the indices of the cards selected by the player
+	 */
+	public void invalidMove(int playerIdx, int[] cardIdx) {
+		invalidMove();
+		repaint();
+	}
+	
+	/**
+	 * Show the next player's turn.
+	 * 
+	 * @param currentPlayerIdx the index of the player who moves next
+	 */
+	public void turnChanged(int currentPlayerIdx) {
+		disable();
+		setActivePlayer(currentPlayerIdx);
+		repaint();
+		promptActivePlayer();
+	}
+	
+	/**
+	 * Repaint and show the end of game pop-up window.
+	 * 
+	 * @param winnerIdx the index of the player who wins the game
+	 */
+	public void gameEnded(int winnerIdx) {
+		repaint();
+		endGame();
+	}
+	
 	/**
 	 * Set the client associated to this gui
 	 * 
@@ -476,7 +600,6 @@ public class BigTwoGUI implements CardGameUI{
 		
 		// add all the component to the BigTwoPanel 
 		public void construct() {
-			this.removeAll();
 			GridBagConstraints c = new GridBagConstraints();
 			
 			// add player's PlayerPanel
@@ -487,20 +610,18 @@ public class BigTwoGUI implements CardGameUI{
 			c.insets = new Insets(5, 5, 0, 0);
 			c.gridheight = 1;
 			
-			if(playerPanels != null) {
-				this.add(playerPanels.get(0), c);
-				c.gridy = 1;
-				this.add(playerPanels.get(1), c);
-				c.gridy = 2;
-				this.add(playerPanels.get(2), c);
-				c.gridy = 3;
-				this.add(playerPanels.get(3), c);
-				c.gridy = 4;
-			}
+			this.add(playerPanels.get(0), c);
+			c.gridy = 1;
+			this.add(playerPanels.get(1), c);
+			c.gridy = 2;
+			this.add(playerPanels.get(2), c);
+			c.gridy = 3;
+			this.add(playerPanels.get(3), c);
+			c.gridy = 4;
 			
 			// add LastHandPanel
 			c.insets = new Insets(5, 5, 5, 0);
-			this.add(new LastHandPanel(), c);
+			this.add(lastHandPanel, c);
 			
 			// add buttons
 			c.gridy = 5;
@@ -511,8 +632,6 @@ public class BigTwoGUI implements CardGameUI{
 			this.add(buttonPanel, c);
 			
 			// add TextPanel
-			if (client != null)
-				chatInput.addKeyListener(new ChatInputListener());
 			c.gridx = 1;
 			c.gridy = 0;
 			c.gridheight = 6;
@@ -586,18 +705,25 @@ public class BigTwoGUI implements CardGameUI{
 	public class PlayerPanel extends JPanel{
 		private int playerIdx; // index of player
 		private CardGamePlayer player; // player
+		private JPanel temp; // panel holding the name, avatar and cards
+		private JLabel label; // name of the player
+		private AvatarPanel avatar; // avatar of the player
+		private CardPane cardPane; // cards of the player
+		// state shown by the panel
+		private String shownName;
+		private boolean shownLocal, shownHighlighted;
 		
 	
 		/**
 		 * Creates and return the player's PlayerPanel
 		 * 
 		 * @param playerIdx	the index of player
-		 * @param you	whether the player are allow to select and show the face of their cards
 		 */
 		public PlayerPanel(int playerIdx) {
 			this.playerIdx = playerIdx;
 			this.player = playerList.get(playerIdx);
 			contruct();
+			update();
 		}
 		
 
@@ -606,49 +732,25 @@ public class BigTwoGUI implements CardGameUI{
 		 */
 		private void contruct() {
 			
-			this.removeAll();
-			this.setBackground(new Color(0, 0, 0));
-			
 			this.setLayout(new BorderLayout());
-			JPanel temp = new JPanel();
+			temp = new JPanel();
 			temp.setLayout(new GridBagLayout());
+			this.setBackground(new Color(42, 79, 61));
+			temp.setBackground(new Color(42, 79, 61));
 			
 			GridBagConstraints c = new GridBagConstraints();
 			
-			if (activePlayer == playerIdx) {
-				this.setBackground(new Color(66, 125, 96));
-				temp.setBackground(new Color(66, 125, 96));
-			}
-			else {
-				this.setBackground(new Color(42, 79, 61));
-				temp.setBackground(new Color(42, 79, 61));
-			}
-			
-			if ((game.getPlayerList().get(playerIdx).getName() != "") && (game.getPlayerList().get(playerIdx).getName() != null)) {
-				JLabel label;
-				
-				
-				if (playerIdx == client.getPlayerID()) {
-					label = new JLabel("You: ");
-					label.setForeground(Color.WHITE);
-				}
-				else {
-					label = new JLabel(playerList.get(playerIdx).getName() + ": ");
-					label.setForeground(Color.BLACK);
-				}
-				
-				c.insets = new Insets(5, 5, 0, 0); 
-				
-				temp.add(label, c); 
-				
-				c.gridy = 1;
-				c.gridwidth = 5; 
-				c.gridheight = 2; 
-				c.insets = new Insets(-40, 0, 50, 120); 
-				AvatarPanel avatar = new AvatarPanel();
-				temp.add(avatar, c);
-			}
+			label = new JLabel();
+			c.insets = new Insets(5, 5, 0, 0); 
+			temp.add(label, c); 
 			
+			c.gridy = 1;
+			c.gridwidth = 5; 
+			c.gridheight = 2; 
+			c.insets = new Insets(-40, 0, 50, 120); 
+			avatar = new AvatarPanel();
+			avatar.setOpaque(false); // shows nothing until a player joins
+			temp.add(avatar, c);
 			
 			c.gridx = 6;
 			c.gridheight = 2; 
@@ -657,30 +759,69 @@ public class BigTwoGUI implements CardGameUI{
 			c.weighty = 1;
 			c.fill = GridBagConstraints.BOTH;
 			
-			CardPane cardPane = new CardPane(playerIdx == client.getPlayerID(), this.player.getCardsInHand(), active);
+			cardPane = new CardPane();
 			cardPane.setPreferredSize(new Dimension(500, 130));
 			temp.add(cardPane, c);
 			
-			
 			this.add(temp, BorderLayout.WEST);
+		}
+		
+		/**
+		 * Update the panel from the state of the player; only what has changed
+		 * is repainted.
+		 * 
+		 * @return true if the size of the panel may have changed
+		 */
+		public boolean update() {
+			boolean resized = false;
 			
+			boolean highlighted = (activePlayer == playerIdx);
+			if (highlighted != shownHighlighted) {
+				Color color = highlighted ? new Color(66, 125, 96) : new Color(42, 79, 61);
+				this.setBackground(color);
+				temp.setBackground(color);
+				shownHighlighted = highlighted;
+			}
 			
+			String name = player.getName();
+			boolean local = (client != null) && (playerIdx == client.getPlayerID());
+			if ((name == null ? shownName != null : !name.equals(shownName)) || (local != shownLocal)) {
+				if ((name != null) && (name.length() > 0)) {
+					if (local) {
+						label.setText("You: ");
+						label.setForeground(Color.WHITE);
+					}
+					else {
+						label.setText(name + ": ");
+						label.setForeground(Color.BLACK);
+					}
+				}
+				else {
+					label.setText("");
+				}
+				avatar.repaint();
+				shownName = name;
+				shownLocal = local;
+				resized = true;
+			}
 			
-			
+			cardPane.update(player.getCardsInHand(), local, local && active);
+			return resized;
 		}
 		
 		
-		
 		// This class of JPanel contain the avatar of the player
 		class AvatarPanel extends JPanel {
 			
 			/**
-			 * Draw the image of the player's avatar.
+			 * Draw the image of the player's avatar (if there is a player).
 			 */
 			public void paintComponent(Graphics g) {
-				this.setSize(130, 130);
-				Image image = new ImageIcon("Avatar/Player" + playerIdx + ".png").getImage();
-				g.drawImage(image, 1, 1, this);
+				CardImages cardImages = images.getNow(null);
+				if ((shownName != null) && (shownName.length() > 0) && (cardImages != null)) {
+					this.setSize(130, 130);
+					cardImages.drawAvatar(g, playerIdx, 1, 1);
+				}
 			}
 		}
 		
@@ -693,164 +834,180 @@ public class BigTwoGUI implements CardGameUI{
 	 *
 	 */
 	class LastHandPanel extends JPanel{
-		private Hand lastHand; // last hand on table
+		private JLabel label; // player of the last hand
+		private CardPane cardPane; // cards of the last hand
+		private boolean shown = false; // whether the last hand is shown
 		
 		/**
 		 * Creates and returns the LastHandPanel.
 		 */
 		public LastHandPanel() {
-			this.lastHand = (handsOnTable.isEmpty()) ? null : handsOnTable.get(handsOnTable.size() - 1);;
 			this.setBackground(new Color(133, 94, 66));
 			this.setPreferredSize(new Dimension(500, 150));
+			this.setLayout(new GridBagLayout());
+			GridBagConstraints c = new GridBagConstraints();
 			
-			if ((this.lastHand != null) && (this.lastHand.getPlayer() != playerList.get(activePlayer))) {
-				this.setLayout(new GridBagLayout());
-				GridBagConstraints c = new GridBagConstraints();
-				
-				c.fill = GridBagConstraints.BOTH;
-				c.weightx = 1.0;
-				c.weighty = 1.0;
-				c.anchor = GridBagConstraints.WEST;
-				c.insets = new Insets(3, 5, 0, 0);
-				
-				JLabel label = new JLabel("Played by " + lastHand.getPlayer().getName());
-				label.setForeground(Color.BLACK);
-				this.add(label, c);
-				
-				c.gridy = 1;
-				c.insets = new Insets(0, 0, 0, 0);
-				CardPane cardPane = new CardPane(true, this.lastHand, false);
-				cardPane.setPreferredSize(new Dimension(350, 130));
-				
-				
-				this.add(cardPane, c);
-			}		
+			c.fill = GridBagConstraints.BOTH;
+			c.weightx = 1.0;
+			c.weighty = 1.0;
+			c.anchor = GridBagConstraints.WEST;
+			c.insets = new Insets(3, 5, 0, 0);
+			
+			label = new JLabel();
+			label.setForeground(Color.BLACK);
+			label.setVisible(false);
+			this.add(label, c);
+			
+			c.gridy = 1;
+			c.insets = new Insets(0, 0, 0, 0);
+			cardPane = new CardPane();
+			cardPane.setPreferredSize(new Dimension(350, 130));
+			cardPane.setVisible(false);
+			this.add(cardPane, c);
+		}
+		
+		/**
+		 * Update the panel from the hands on table; it is only repainted if the
+		 * last hand has changed.
+		 */
+		public void update() {
+			Hand lastHand = (handsOnTable.isEmpty()) ? null : handsOnTable.get(handsOnTable.size() - 1);
+			// the last hand is hidden when its player is to lead again
+			boolean show = (lastHand != null)
+					&& ((activePlayer < 0) || (lastHand.getPlayer() != playerList.get(activePlayer)));
+			if (show) {
+				String text = "Played by " + lastHand.getPlayer().getName();
+				if (!text.equals(label.getText())) {
+					label.setText(text);
+				}
+				cardPane.update(lastHand, true, false);
+			}
+			if (show != shown) {
+				label.setVisible(show);
+				cardPane.setVisible(show);
+				shown = show;
+			}
 		}
 	}
 		
 
 	/**
-	 * This class of JLayeredPane place the card in an overlapping manner.
+	 * This class of JLayeredPane place the card in an overlapping manner. The
+	 * CardPanels are created once and reused for the cards shown.
 	 * 
 	 * @author Chan Sze Wing
 	 *
 	 */
 	class CardPane extends JLayeredPane {
-		private CardList cards; // list of cards
 		private int xLoc = 10, yLoc = 20, width = 76, height = 101; // parameter of the boundaries
-		private boolean active;
-		
-		public CardPane(boolean face, CardList cards, boolean active) {
-			this.cards = cards;
-			this.active = active;
-			
-			// when it is the player's turn
-			if (face) {
-				placeCard();
-			}// when it is NOT the player's turn
-			else  {
-				backCard();
-			}
-			
-		}
+		private CardPanel[] cardPanels = new CardPanel[MAX_CARD_NUM]; // created on demand
+		private Card[] shownCards = new Card[MAX_CARD_NUM]; // cards shown
+		private int numOfShownCards = 0;
+		private boolean face, active;
 		
 		/**
-		 * Place the cards face up.
+		 * Update the cards shown; the pane is only repainted if they have changed
+		 * (or a card has been selected or unselected elsewhere).
 		 * 
+		 * @param cards the list of cards
+		 * @param face whether the cards are shown face up
+		 * @param active whether the cards can be selected (only the face-up
+		 *            cards of the local player)
 		 */
-		public void placeCard() {
-			for (int i = 0; i < cards.size(); i++) {
-				CardPanel cardPanel = new CardPanel(cards.getCard(i));
-				cardPanel.idx = i;
-				cardPanel.c_xLoc = xLoc;
-				cardPanel.c_yLoc = yLoc;
-				if (active) 
-					cardPanel.addMouseListener(cardPanel);
-				cardPanel.setBounds(cardPanel.c_xLoc, cardPanel.c_yLoc, width, height);
-				
-				this.add(cardPanel, new Integer(i));
-				xLoc += 30;
+		public void update(CardList cards, boolean face, boolean active) {
+			int n = Math.min(cards.size(), MAX_CARD_NUM);
+			boolean changed = (face != this.face) || (active != this.active) || (n != numOfShownCards);
+			for (int i = 0; i < n && !changed; i++) {
+				changed = !cards.getCard(i).equals(shownCards[i]);
 			}
-		}
-		
-		/**
-		 * Place the cards face down.
-		 */
-		public void backCard() {
-			for (int i = 0; i < cards.size(); i++) {
-				BackCardPanel cardPanel = new BackCardPanel();
-				
-				cardPanel.setBounds(xLoc, yLoc, width, height);
-				
-				this.add(cardPanel, new Integer(i));
-				xLoc += 30;
+			this.face = face;
+			this.active = active;
+			
+			if (changed) {
+				for (int i = 0; i < n; i++) {
+					if (cardPanels[i] == null) {
+						cardPanels[i] = new CardPanel(i);
+						this.add(cardPanels[i], Integer.valueOf(i));
+					}
+					cardPanels[i].setCard(cards.getCard(i), face);
+					cardPanels[i].setVisible(true);
+					shownCards[i] = cards.getCard(i);
+				}
+				for (int i = n; i < numOfShownCards; i++) {
+					cardPanels[i].setVisible(false);
+					shownCards[i] = null;
+				}
+				numOfShownCards = n;
 			}
-		}
-		
-		/**
-		 * This class of JPanel contains the back of the card.
-		 * 
-		 * @author Chan Sze Wing
-		 *
-		 */
-		class BackCardPanel extends JPanel {
-			/**
-			 * Draw the back of the card.
-			 */
-			public void paintComponent(Graphics g) {
-				Image image = new ImageIcon("Card_Image/b.gif").getImage();
-				g.drawImage(image, 3, 4, this);
+			
+			// raises the selected cards (the selection is reset after a move)
+			for (int i = 0; i < n; i++) {
+				cardPanels[i].setSelectable(face && active);
+				cardPanels[i].place(face && active && selected[i]);
 			}
 		}
 		
 		/**
-		 * This class of JPanel contains the face of the card.
+		 * This class of JPanel contains the face (or the back) of the card.
 		 * 
 		 * @author Chan Sze Wing
 		 *
 		 */
 		class CardPanel extends JPanel implements MouseListener {
 			private Card card; // the card
-			private String cardName = ""; // the card's image name
+			private boolean face = false; // whether the face of the card is drawn
 			private int idx; // index of the card
-			private int c_xLoc, c_yLoc; 
+			private boolean raised = false; // whether the card is raised
+			private boolean selectable = false; // whether the card can be clicked
 			
 			
 			/**
 			 * Creates and return an instance of CardPanel.
 			 * 
+			 * @param idx the index of the card in the pane
+			 */
+			public CardPanel(int idx) {
+				this.idx = idx;
+				this.setBounds(xLoc + 30 * idx, yLoc, width, height);
+			}
+			
+			/**
+			 * Set whether the card can be selected by clicking it; the mouse
+			 * listener is only installed on the cards of the local player.
+			 * 
+			 * @param selectable whether the card can be selected
+			 */
+			public void setSelectable(boolean selectable) {
+				if (selectable != this.selectable) {
+					this.selectable = selectable;
+					if (selectable)
+						this.addMouseListener(this);
+					else
+						this.removeMouseListener(this);
+				}
+			}
+			
+			/**
+			 * Set the card to be drawn.
+			 * 
 			 * @param card the card required to draw.
+			 * @param face whether the face of the card is drawn
 			 */
-			public CardPanel(Card card) {
+			public void setCard(Card card, boolean face) {
 				this.card = card;
-				
-				if (card.getRank() == 0)
-					cardName += "a";
-				else if (card.getRank() == 9) 
-					cardName += "t";
-				else if (card.getRank() == 10)
-					cardName += "j";
-				else if (card.getRank() == 11)
-					cardName += "q";
-				else if (card.getRank() == 12)
-					cardName += "k";
-				else 
-					cardName += card.getRank() + 1;
-				
-				
-				if (card.getSuit() == 0)
-					cardName += "d";
-				else if (card.getSuit() == 1) 
-					cardName += "c";
-				else if (card.getSuit() == 2)
-					cardName += "h";
-				else 
-					cardName += "s";
-				
-				for (int i = 0; i < cards.size(); i++) {
-					if ((card.getSuit() == cards.getCard(i).getSuit()) && (card.getRank() == cards.getCard(i).getRank())) {
-						this.idx = i;
-					}
+				this.face = face;
+				repaint();
+			}
+			
+			/**
+			 * Place the card, raised if it is selected.
+			 * 
+			 * @param raised whether the card is raised
+			 */
+			public void place(boolean raised) {
+				if (raised != this.raised) {
+					this.raised = raised;
+					this.setLocation(xLoc + 30 * idx, raised ? yLoc - 20 : yLoc);
 				}
 			}
 			
@@ -858,8 +1015,13 @@ public class BigTwoGUI implements CardGameUI{
 			 * Draw the card.
 			 */
 			public void paintComponent(Graphics g) {
-				Image image = new ImageIcon("Card_Image/" + cardName + ".gif").getImage();
-				g.drawImage(image, 3, 4, this);
+				CardImages cardImages = images.getNow(null);
+				if (cardImages == null)
+					return;
+				if (face)
+					cardImages.drawCard(g, card, 3, 4);
+				else
+					cardImages.drawBack(g, 3, 4);
 			}
 			
 
@@ -868,17 +1030,11 @@ public class BigTwoGUI implements CardGameUI{
 			 * Rise the card when the mouse clicks it.
 			 */
 			public void mouseClicked(MouseEvent e) {
-				if (selected[idx]) {
-					selected[idx] = false;
-					c_yLoc = yLoc;
+				if (!selectable) {
+					return;
 				}
-				else {
-					selected[idx] = true;
-					c_yLoc = yLoc - 20;
-				}
-				
-				this.setBounds(c_xLoc, c_yLoc, width, height);
-				frame.repaint();
+				selected[idx] = !selected[idx];
+				place(selected[idx]);
 			}
 	
 			/**
@@ -0,0 +1,46 @@
+/**
+ * An interface for receiving the events of a Big Two card game. A listener is
+ * registered with BigTwoEngine.addListener() and is notified on the thread
+ * which calls start() or checkMove().
+ *
+ * @author Chan Sze Wing
+ */
+public interface BigTwoListener {
+	/**
+	 * Invoked when the cards have been dealt and a new game starts.
+	 *
+	 * @param firstPlayerIdx the index of the player holding the Three of Diamonds
+	 */
+	public void gameStarted(int firstPlayerIdx);
+
+	/**
+	 * Invoked when a player makes a legal move.
+	 *
+	 * @param playerIdx the index of the player who makes the move
+	 * @param hand      the hand played, or null if the player passes
+	 */
+	public void movePlayed(int playerIdx, Hand hand);
+
+	/**
+	 * Invoked when a player makes an illegal move. The state of the game is
+	 * unchanged.
+	 *
+	 * @param playerIdx the index of the player who makes the move
+	 * @param cardIdx   the list of the indices of the cards selected by the player
+	 */
+	public void invalidMove(int playerIdx, int[] cardIdx);
+
+	/**
+	 * Invoked when the turn passes to the next player after a legal move.
+	 *
+	 * @param currentPlayerIdx the index of the player who moves next
+	 */
+	public void turnChanged(int currentPlayerIdx);
+
+	/**
+	 * Invoked when a player has played all of their cards.
+	 *
+	 * @param winnerIdx the index of the player who wins the game
+	 */
+	public void gameEnded(int winnerIdx);
+}
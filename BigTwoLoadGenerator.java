@@ -0,0 +1,721 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * This class is used to generate load on a running Big Two server with bots,
+ * i.e. headless clients which speak the protocol of BigTwoClient (in the
+ * binary wire format) and play real games, so that the capacity of a server
+ * can be measured without four people at their GUIs per table:
+ *
+ * <pre>
+ * java BigTwoServer 2396 --nio
+ * java BigTwoLoadGenerator 127.0.0.1 2396 2000 60 --think=200 --warmup=10
+ * </pre>
+ *
+ * Every bot joins a room (4 bots per room, from room --room=ID on), sends a
+ * READY message, and then plays its moves with a BigTwoStrategy on its own
+ * copy of the game, which it updates with the moves broadcast by the server;
+ * now and then it sends a chat message (MSG). When a game ends, the bots are
+ * ready for the next one, until the end of the run. The options are
+ * <ul>
+ * <li>--think=MS: the delay (in milliseconds) before a bot sends a READY or
+ * MOVE message, i.e. the thinking time of a player (default 0, which plays
+ * as fast as the server answers);</li>
+ * <li>--chat=P: the probability of a chat message before a move (default
+ * 0.05);</li>
+ * <li>--strategy=random|greedy: the strategy of the bots (default
+ * random);</li>
+ * <li>--warmup=S: the number of seconds at the start of the run which are
+ * not measured (default 0);</li>
+ * <li>--threads=N: the number of threads running the bots (default one per
+ * processor);</li>
+ * <li>--room=ID: the ID of the room of the first 4 bots (default 0);</li>
+ * <li>--seed=N: the seed of the random number generators of the bots.</li>
+ * </ul>
+ * The round-trip time of a request is measured from the moment it is written
+ * to the moment its answer arrives: PLAYER_LIST (or FULL) for a JOIN, and the
+ * broadcast of the message itself for a READY, MSG or MOVE (or INVALID_MOVE
+ * for a rejected move). The connections and JOIN messages are measured during
+ * the warmup as well, as every bot sets up its connection once.
+ * <p>
+ * The bots of a thread share a selector, so a thread can run thousands of
+ * them. The report gives the percentiles of the round-trip times of every
+ * type of request, the messages and bytes per second in each direction, the
+ * games played, and the connections which failed or were closed by the
+ * server.
+ *
+ * @author Kenneth Wong
+ *
+ */
+public class BigTwoLoadGenerator {
+	// number of bots in a room
+	private static final int SEATS = 4;
+	// the pseudo type of the round-trip time of connecting
+	private static final int CONNECT = CardGameMessage.NUM_OF_TYPES;
+	// the actions scheduled by a bot after its thinking time
+	private static final int NO_ACTION = 0, READY_ACTION = 1, MOVE_ACTION = 2;
+
+	private final InetSocketAddress address;
+	private final long thinkNanos;
+	private final double chatRate;
+	private final BigTwoStrategy strategy;
+	private final int firstRoomID;
+	// nanoTime of the start and of the end of the measured part of the run
+	private long measureStart, measureEnd;
+
+	/**
+	 * Creates a load generator for the server at the specified address.
+	 *
+	 * @param address
+	 *            the address of the server
+	 * @param thinkMillis
+	 *            the delay before a bot sends a READY or MOVE message
+	 * @param chatRate
+	 *            the probability of a chat message before a move
+	 * @param strategy
+	 *            the strategy of the bots
+	 * @param firstRoomID
+	 *            the ID of the room of the first 4 bots
+	 */
+	public BigTwoLoadGenerator(InetSocketAddress address, long thinkMillis, double chatRate,
+			BigTwoStrategy strategy, int firstRoomID) {
+		this.address = address;
+		this.thinkNanos = thinkMillis * 1000000L;
+		this.chatRate = chatRate;
+		this.strategy = strategy;
+		this.firstRoomID = firstRoomID;
+	}
+
+	/**
+	 * Runs the bots until the end of the run, and returns what they measured.
+	 *
+	 * @param numOfBots
+	 *            the number of bots
+	 * @param numOfThreads
+	 *            the number of threads running the bots
+	 * @param warmupSeconds
+	 *            the number of seconds which are not measured
+	 * @param seconds
+	 *            the number of seconds which are measured
+	 * @param seed
+	 *            the seed of the random number generators of the bots
+	 * @return the statistics of the measured part of the run
+	 * @throws IOException
+	 *             if a selector cannot be opened
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public Statistics run(int numOfBots, int numOfThreads, int warmupSeconds, int seconds, long seed)
+			throws IOException, InterruptedException {
+		long now = System.nanoTime();
+		measureStart = now + warmupSeconds * 1000000000L;
+		measureEnd = measureStart + seconds * 1000000000L;
+		SplittableRandom seeds = new SplittableRandom(seed);
+		EventLoop[] loops = new EventLoop[numOfThreads];
+		for (int t = 0; t < numOfThreads; t++) {
+			loops[t] = new EventLoop();
+		}
+		// the bots of a room are spread over the threads, like clients on
+		// different machines
+		for (int i = 0; i < numOfBots; i++) {
+			loops[i % numOfThreads].bots.add(new Bot(i, firstRoomID + i / SEATS, seeds.split()));
+		}
+		Thread[] threads = new Thread[numOfThreads];
+		for (int t = 0; t < numOfThreads; t++) {
+			threads[t] = new Thread(loops[t], "LoadGenerator-" + t);
+			threads[t].start();
+		}
+		Statistics statistics = new Statistics();
+		for (int t = 0; t < numOfThreads; t++) {
+			threads[t].join();
+			statistics.add(loops[t].statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * This class is used to hold the measurements of a run.
+	 */
+	public static class Statistics {
+		private final Latencies[] latencies = new Latencies[CONNECT + 1];
+		private final long[] sent = new long[CONNECT];
+		private final long[] received = new long[CONNECT];
+		private long bytesSent = 0, bytesReceived = 0;
+		private long numOfGames = 0;
+		private int connected = 0, failedToConnect = 0, closedByServer = 0, errors = 0;
+		private int full = 0, invalidMoves = 0, quits = 0, outstanding = 0;
+		private double seconds = 0;
+
+		/**
+		 * Creates the statistics of no messages.
+		 */
+		public Statistics() {
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = new Latencies();
+			}
+		}
+
+		/**
+		 * Adds the measurements of another thread to these statistics.
+		 *
+		 * @param other
+		 *            the statistics of the other thread
+		 */
+		public void add(Statistics other) {
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i].addAll(other.latencies[i]);
+			}
+			for (int i = 0; i < sent.length; i++) {
+				sent[i] += other.sent[i];
+				received[i] += other.received[i];
+			}
+			bytesSent += other.bytesSent;
+			bytesReceived += other.bytesReceived;
+			numOfGames += other.numOfGames;
+			connected += other.connected;
+			failedToConnect += other.failedToConnect;
+			closedByServer += other.closedByServer;
+			errors += other.errors;
+			full += other.full;
+			invalidMoves += other.invalidMoves;
+			quits += other.quits;
+			outstanding += other.outstanding;
+			seconds = Math.max(seconds, other.seconds);
+		}
+
+		/**
+		 * Prints the report of the run.
+		 */
+		public void print() {
+			System.out.printf("%-8s %10s %10s %9s %9s %9s %9s %9s%n", "request", "sent", "answered",
+					"p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+			int[] types = { CONNECT, CardGameMessage.JOIN, CardGameMessage.READY, CardGameMessage.MOVE,
+					CardGameMessage.MSG };
+			for (int type : types) {
+				Latencies l = latencies[type];
+				l.sort();
+				System.out.printf("%-8s %10s %10d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+						(type == CONNECT) ? "CONNECT" : CardGameMessage.getTypeName(type),
+						(type == CONNECT) ? "" : "" + sent[type], l.size, millis(l.percentile(0.50)),
+						millis(l.percentile(0.90)), millis(l.percentile(0.99)),
+						millis(l.percentile(0.999)), millis(l.percentile(1.0)));
+			}
+
+			long totalSent = 0, totalReceived = 0;
+			for (int i = 0; i < sent.length; i++) {
+				totalSent += sent[i];
+				totalReceived += received[i];
+			}
+			System.out.printf("%nover %.1f s:%n", seconds);
+			System.out.printf("sent       %10.0f messages/s %12.0f bytes/s%n", totalSent / seconds,
+					bytesSent / seconds);
+			System.out.printf("received   %10.0f messages/s %12.0f bytes/s%n", totalReceived / seconds,
+					bytesReceived / seconds);
+			StringBuilder counts = new StringBuilder("received   ");
+			for (int i = 0; i < received.length; i++) {
+				if (received[i] > 0) {
+					counts.append(CardGameMessage.getTypeName(i)).append(' ').append(received[i]).append("  ");
+				}
+			}
+			System.out.println(counts.toString().trim());
+			System.out.printf("games      %10d (%.1f games/s)%n", numOfGames, numOfGames / seconds);
+			System.out.printf("connections %9d connected, %d failed to connect, %d closed by the server, "
+					+ "%d errors%n", connected, failedToConnect, closedByServer, errors);
+			System.out.printf("rejections %10d FULL, %d INVALID_MOVE, %d QUIT received, "
+					+ "%d requests unanswered at the end%n", full, invalidMoves, quits, outstanding);
+		}
+
+		/**
+		 * Returns the number of connections which failed, i.e. which could
+		 * not be established, were closed by the server or failed with an
+		 * error.
+		 *
+		 * @return the number of failed connections
+		 */
+		public int getNumOfFailedConnections() {
+			return failedToConnect + closedByServer + errors;
+		}
+	}
+
+	/**
+	 * This class is used to hold the round-trip times of one type of request.
+	 */
+	private static class Latencies {
+		private long[] values = new long[1024];
+		private int size = 0;
+
+		private void add(long nanos) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = nanos;
+		}
+
+		private void addAll(Latencies other) {
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, Math.max(size + other.size, values.length * 2));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		private void sort() {
+			Arrays.sort(values, 0, size);
+		}
+
+		// Returns the percentile p (from 0 to 1) of the sorted values
+		private long percentile(double p) {
+			if (size == 0) {
+				return 0;
+			}
+			int i = (int) Math.ceil(p * size) - 1;
+			return values[Math.max(0, Math.min(size - 1, i))];
+		}
+	}
+
+	/**
+	 * This class is used to model a bot, i.e. one client connection playing
+	 * in a room.
+	 */
+	private class Bot {
+		private final int roomID;
+		private final String name;
+		private final SplittableRandom random;
+		private SocketChannel channel;
+		private SelectionKey key;
+		private long connectTime; // nanoTime when connect() was called
+		private ByteBuffer input = ByteBuffer.allocate(4096);
+		private boolean headerSent = false, headerReceived = false;
+		private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+		// the types and send times of the requests waiting for an answer
+		private final ArrayDeque<long[]> requests = new ArrayDeque<long[]>();
+		private int playerID = -1;
+		private BigTwoEngine game = null; // the game being played, if any
+		private final MoveGenerator generator = new MoveGenerator();
+		private int action = NO_ACTION; // the action waiting for dueTime, if queued
+		private long dueTime;
+		private boolean closed = false;
+
+		private Bot(int i, int roomID, SplittableRandom random) {
+			this.roomID = roomID;
+			this.name = "bot" + i;
+			this.random = random;
+		}
+	}
+
+	/**
+	 * This class is used to run bots on one thread, with a selector for their
+	 * connections and a queue of their scheduled actions.
+	 */
+	private class EventLoop implements Runnable {
+		private final ArrayList<Bot> bots = new ArrayList<Bot>();
+		private final Statistics statistics = new Statistics();
+		private final PriorityQueue<Bot> timers = new PriorityQueue<Bot>(11, new Comparator<Bot>() {
+			public int compare(Bot a, Bot b) {
+				return Long.compare(a.dueTime, b.dueTime);
+			}
+		});
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(65536);
+		private Selector selector;
+
+		public void run() {
+			try {
+				selector = Selector.open();
+				for (Bot bot : bots) {
+					connect(bot);
+				}
+				while (true) {
+					long now = System.nanoTime();
+					if (now >= measureEnd) {
+						break;
+					}
+					while (!timers.isEmpty() && timers.peek().dueTime <= now) {
+						Bot bot = timers.poll();
+						int action = bot.action;
+						bot.action = NO_ACTION;
+						perform(bot, action);
+					}
+					long wait = measureEnd - now;
+					if (!timers.isEmpty()) {
+						wait = Math.min(wait, timers.peek().dueTime - now);
+					}
+					selector.select(Math.max(1, wait / 1000000));
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						handle((Bot) key.attachment(), key);
+					}
+				}
+				for (Bot bot : bots) {
+					statistics.outstanding += bot.requests.size();
+					close(bot);
+				}
+				selector.close();
+			} catch (IOException ex) {
+				System.out.println("Error in running the bots: " + ex.getMessage());
+			}
+			statistics.seconds = (measureEnd - measureStart) / 1e9;
+		}
+
+		private void connect(Bot bot) {
+			bot.connectTime = System.nanoTime();
+			try {
+				bot.channel = SocketChannel.open();
+				bot.channel.configureBlocking(false);
+				bot.channel.socket().setTcpNoDelay(true);
+				bot.channel.connect(address);
+				bot.key = bot.channel.register(selector, SelectionKey.OP_CONNECT, bot);
+			} catch (IOException ex) {
+				statistics.failedToConnect++;
+				close(bot);
+			}
+		}
+
+		private void handle(Bot bot, SelectionKey key) {
+			try {
+				if (!key.isValid()) {
+					return;
+				}
+				if (key.isConnectable()) {
+					try {
+						bot.channel.finishConnect();
+					} catch (IOException ex) {
+						statistics.failedToConnect++;
+						close(bot);
+						return;
+					}
+					statistics.connected++;
+					statistics.latencies[CONNECT].add(System.nanoTime() - bot.connectTime);
+					key.interestOps(SelectionKey.OP_READ);
+					send(bot, new CardGameMessage(CardGameMessage.JOIN, bot.roomID, bot.name));
+					return;
+				}
+				if (key.isWritable()) {
+					write(bot);
+				}
+				if (key.isValid() && key.isReadable()) {
+					read(bot);
+				}
+			} catch (IOException ex) {
+				statistics.errors++;
+				close(bot);
+			} catch (ClassNotFoundException ex) {
+				statistics.errors++;
+				close(bot);
+			}
+		}
+
+		// Reads the bytes which have arrived and handles the complete messages
+		private void read(Bot bot) throws IOException, ClassNotFoundException {
+			readBuffer.clear();
+			int n = bot.channel.read(readBuffer);
+			if (n < 0) {
+				statistics.closedByServer++;
+				close(bot);
+				return;
+			}
+			if (isMeasured(System.nanoTime())) {
+				statistics.bytesReceived += n;
+			}
+			readBuffer.flip();
+			if (bot.input.remaining() < n) {
+				bot.input.flip();
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(bot.input.capacity() * 2,
+						bot.input.remaining() + n));
+				bot.input = larger.put(bot.input);
+			}
+			bot.input.put(readBuffer);
+
+			bot.input.flip();
+			if (!bot.headerReceived && CardGameCodec.hasHeader(bot.input)) {
+				if (!CardGameCodec.readBinaryHeader(bot.input)) {
+					throw new StreamCorruptedException("Not a binary stream");
+				}
+				bot.headerReceived = true;
+			}
+			while (bot.headerReceived && !bot.closed) {
+				// decodes the messages which have arrived completely
+				int length = CardGameCodec.frameLength(bot.input);
+				if (length < 0) {
+					break;
+				}
+				CardGameMessage message = CardGameCodec.decode(bot.input.array(),
+						bot.input.position(), length);
+				bot.input.position(bot.input.position() + length);
+				receive(bot, message);
+			}
+			bot.input.compact();
+		}
+
+		// Updates a bot with a message from the server
+		private void receive(Bot bot, CardGameMessage message) throws IOException {
+			long now = System.nanoTime();
+			int type = message.getType();
+			boolean measured = isMeasured(now);
+			if (measured && type >= 0 && type < statistics.received.length) {
+				statistics.received[type]++;
+			}
+			boolean own = (message.getPlayerID() == bot.playerID);
+			switch (type) {
+			case CardGameMessage.PLAYER_LIST:
+				bot.playerID = message.getPlayerID();
+				answer(bot, CardGameMessage.JOIN, now);
+				schedule(bot, READY_ACTION, now);
+				break;
+			case CardGameMessage.FULL:
+				answer(bot, CardGameMessage.JOIN, now);
+				if (measured) {
+					statistics.full++;
+				}
+				break;
+			case CardGameMessage.READY:
+				if (own) {
+					answer(bot, CardGameMessage.READY, now);
+				}
+				break;
+			case CardGameMessage.START:
+				bot.game = new BigTwoEngine();
+				bot.game.start((Deck) message.getData());
+				scheduleMove(bot, now);
+				break;
+			case CardGameMessage.MOVE:
+				if (own) {
+					answer(bot, CardGameMessage.MOVE, now);
+				}
+				if (bot.game != null) {
+					bot.game.applyMove(message.getPlayerID(), (int[]) message.getData());
+					if (bot.game.endOfGame()) {
+						bot.game = null;
+						// the game is counted once, by the bot of the first seat
+						if (bot.playerID == 0 && measured) {
+							statistics.numOfGames++;
+						}
+						schedule(bot, READY_ACTION, now);
+					} else {
+						scheduleMove(bot, now);
+					}
+				}
+				break;
+			case CardGameMessage.INVALID_MOVE:
+				// the copy of the game of the bot differs from the server's
+				answer(bot, CardGameMessage.MOVE, now);
+				if (measured) {
+					statistics.invalidMoves++;
+				}
+				break;
+			case CardGameMessage.MSG:
+				if (own) {
+					answer(bot, CardGameMessage.MSG, now);
+				}
+				break;
+			case CardGameMessage.QUIT:
+				// the game of the room stops until the seat is taken again
+				bot.game = null;
+				if (measured) {
+					statistics.quits++;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		// Schedules the move of a bot if it is its turn
+		private void scheduleMove(Bot bot, long now) {
+			if (bot.game != null && bot.game.getCurrentPlayerIdx() == bot.playerID) {
+				schedule(bot, MOVE_ACTION, now);
+			}
+		}
+
+		private void schedule(Bot bot, int action, long now) {
+			if (thinkNanos == 0) {
+				perform(bot, action);
+				return;
+			}
+			// a bot is queued once, for its latest action
+			if (bot.action == NO_ACTION) {
+				bot.dueTime = now + thinkNanos;
+				timers.add(bot);
+			}
+			bot.action = action;
+		}
+
+		// Sends the READY or MOVE message of a bot
+		private void perform(Bot bot, int action) {
+			if (bot.closed) {
+				return;
+			}
+			if (action == READY_ACTION) {
+				send(bot, new CardGameMessage(CardGameMessage.READY, -1, null));
+			} else if (action == MOVE_ACTION && bot.game != null
+					&& bot.game.getCurrentPlayerIdx() == bot.playerID) {
+				if (chatRate > 0 && bot.random.nextDouble() < chatRate) {
+					send(bot, new CardGameMessage(CardGameMessage.MSG, -1, "Good game!"));
+				}
+				BigTwoEngine game = bot.game;
+				CardGamePlayer player = game.getPlayerList().get(bot.playerID);
+				bot.generator.generate(player, game.getHandsOnTable());
+				boolean mayPass = !game.getHandsOnTable().isEmpty() && game.getHandsOnTable()
+						.get(game.getHandsOnTable().size() - 1).getPlayer() != player;
+				long move = strategy.chooseMove(game, bot.playerID, bot.generator, mayPass, bot.random);
+				send(bot, new CardGameMessage(CardGameMessage.MOVE, -1, (move == BigTwoStrategy.PASS)
+						? null : MoveGenerator.toCardIdx(move, player.getCardsInHand())));
+			}
+		}
+
+		// Records the round-trip time of the oldest request of a type
+		private void answer(Bot bot, int type, long now) {
+			for (Iterator<long[]> it = bot.requests.iterator(); it.hasNext();) {
+				long[] request = it.next();
+				if (request[0] == type) {
+					it.remove();
+					// the connections are set up once, so they are measured
+					// during the warmup as well
+					if (type == CardGameMessage.JOIN || isMeasured(request[1])) {
+						statistics.latencies[type].add(now - request[1]);
+					}
+					return;
+				}
+			}
+		}
+
+		// Writes a message to the server (the stream header goes first)
+		private void send(Bot bot, CardGameMessage message) {
+			if (bot.closed) {
+				return;
+			}
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+				DataOutputStream out = new DataOutputStream(bytes);
+				if (!bot.headerSent) {
+					out.writeByte(CardGameCodec.BINARY_MAGIC);
+					out.writeByte(CardGameCodec.BINARY_VERSION);
+					bot.headerSent = true;
+				}
+				CardGameCodec.encode(out, message);
+				long now = System.nanoTime();
+				if (isMeasured(now)) {
+					statistics.bytesSent += bytes.size();
+				}
+				if (message.getType() == CardGameMessage.JOIN || isMeasured(now)) {
+					statistics.sent[message.getType()]++;
+				}
+				bot.requests.add(new long[] { message.getType(), now });
+				bot.output.add(ByteBuffer.wrap(bytes.toByteArray()));
+				write(bot);
+			} catch (IOException ex) {
+				statistics.errors++;
+				close(bot);
+			}
+		}
+
+		// Writes the queued bytes of a bot, as far as the socket accepts them
+		private void write(Bot bot) throws IOException {
+			while (!bot.output.isEmpty()) {
+				ByteBuffer buffer = bot.output.peek();
+				bot.channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					bot.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				bot.output.poll();
+			}
+			bot.key.interestOps(SelectionKey.OP_READ);
+		}
+
+		private void close(Bot bot) {
+			bot.closed = true;
+			try {
+				if (bot.channel != null) {
+					bot.channel.close();
+				}
+			} catch (IOException ex) {
+				// already closed
+			}
+		}
+	}
+
+	private boolean isMeasured(long nanoTime) {
+		return nanoTime >= measureStart && nanoTime < measureEnd;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * main() method for running the bots.
+	 *
+	 * @param args
+	 *            host, port, number of bots and number of seconds measured
+	 *            (default 127.0.0.1 2396 400 30), followed by the options
+	 * @throws Exception
+	 *             if the bots cannot be run
+	 */
+	public static void main(String[] args) throws Exception {
+		ArrayList<String> positional = new ArrayList<String>();
+		long thinkMillis = 0;
+		double chatRate = 0.05;
+		BigTwoStrategy strategy = BigTwoStrategy.RANDOM;
+		int warmupSeconds = 0;
+		int numOfThreads = Runtime.getRuntime().availableProcessors();
+		int firstRoomID = CardGameServer.DEFAULT_ROOM_ID;
+		long seed = System.nanoTime();
+		for (String arg : args) {
+			if (arg.startsWith("--think=")) {
+				thinkMillis = Long.parseLong(arg.substring("--think=".length()));
+			} else if (arg.startsWith("--chat=")) {
+				chatRate = Double.parseDouble(arg.substring("--chat=".length()));
+			} else if (arg.startsWith("--strategy=")) {
+				String name = arg.substring("--strategy=".length());
+				if (name.equals("random")) {
+					strategy = BigTwoStrategy.RANDOM;
+				} else if (name.equals("greedy")) {
+					strategy = BigTwoStrategy.GREEDY;
+				} else {
+					System.out.println("Unknown strategy: " + name);
+					return;
+				}
+			} else if (arg.startsWith("--warmup=")) {
+				warmupSeconds = Integer.parseInt(arg.substring("--warmup=".length()));
+			} else if (arg.startsWith("--threads=")) {
+				numOfThreads = Integer.parseInt(arg.substring("--threads=".length()));
+			} else if (arg.startsWith("--room=")) {
+				firstRoomID = Integer.parseInt(arg.substring("--room=".length()));
+			} else if (arg.startsWith("--seed=")) {
+				seed = Long.parseLong(arg.substring("--seed=".length()));
+			} else {
+				positional.add(arg);
+			}
+		}
+		String host = (positional.size() > 0) ? positional.get(0) : "127.0.0.1";
+		int port = (positional.size() > 1) ? Integer.parseInt(positional.get(1)) : 2396;
+		int numOfBots = (positional.size() > 2) ? Integer.parseInt(positional.get(2)) : 400;
+		int seconds = (positional.size() > 3) ? Integer.parseInt(positional.get(3)) : 30;
+
+		System.out.printf("%d bots on %d threads against %s:%d, %d s (+%d s warmup), think %d ms, %s%n",
+				numOfBots, numOfThreads, host, port, seconds, warmupSeconds, thinkMillis, strategy);
+		BigTwoLoadGenerator generator = new BigTwoLoadGenerator(new InetSocketAddress(host, port),
+				thinkMillis, chatRate, strategy, firstRoomID);
+		Statistics statistics = generator.run(numOfBots, numOfThreads, warmupSeconds, seconds, seed);
+		statistics.print();
+		if (statistics.getNumOfFailedConnections() > 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -1,15 +1,32 @@
+import java.awt.GraphicsEnvironment;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * This class is used to model a Big Two card game server.
  * @author Kenneth Wong
  *
  */
 public class BigTwoServer extends CardGameServer {
+	// the state of the game being played in each room, used to check the moves
+	private final ConcurrentHashMap<Integer, BigTwoEngine> games = new ConcurrentHashMap<Integer, BigTwoEngine>();
+
 	/**
-	 * Creates and returns an instance of the BigTwoServer class.
+	 * Creates and returns an instance of the BigTwoServer class, with a GUI
+	 * unless there is no display.
 	 */
 	public BigTwoServer() {
 		super("Big Two Server", 4);
 	}
+
+	/**
+	 * Creates and returns an instance of the BigTwoServer class.
+	 * @param headless true to run without a GUI, writing the log to the
+	 *            standard output
+	 */
+	public BigTwoServer(boolean headless) {
+		super("Big Two Server", 4, headless);
+	}
 	
 	/**
 	 * Creates and returns an instance of the BigTwoDeck class.
@@ -19,19 +36,116 @@ public class BigTwoServer extends CardGameServer {
 		return new BigTwoDeck(); 
 	}
 	
+	/**
+	 * Starts the server copy of the game of a room with the deck sent to the
+	 * clients.
+	 * @param roomID the ID of the room
+	 * @param deck the shuffled deck of the new game
+	 */
+	protected void gameStarted(int roomID, Deck deck) {
+		BigTwoEngine game = new BigTwoEngine();
+		game.start(deck);
+		games.put(roomID, game);
+	}
+
+	/**
+	 * Stops the server copy of the game of a room.
+	 * @param roomID the ID of the room
+	 */
+	protected void gameStopped(int roomID) {
+		games.remove(roomID);
+	}
+
+	/**
+	 * Returns the number of games in progress, i.e. started and not yet
+	 * ended or stopped.
+	 * @return the number of games
+	 */
+	public int getNumOfGames() {
+		return games.size();
+	}
+
+	/**
+	 * Checks a move with the Big Two rules and plays it on the server copy of
+	 * the game of the room if it is legal, so that only legal moves are
+	 * broadcast. A move whose indices are not those of distinct cards in the
+	 * hand of the player (e.g. out of range) is not legal.
+	 * @param roomID the ID of the room of the player
+	 * @param playerID the playerID of the player who makes the move
+	 * @param data the array of card indices of the move (null for a pass)
+	 * @return true if the move is legal; false otherwise
+	 */
+	protected boolean acceptMove(int roomID, int playerID, Object data) {
+		BigTwoEngine game = games.get(roomID);
+		if (game == null || (data != null && !(data instanceof int[]))) {
+			return false;
+		}
+		int[] cardIdx = (int[]) data;
+		if (!game.isLegalMove(playerID, cardIdx)) {
+			return false;
+		}
+		game.applyMove(playerID, cardIdx);
+		if (game.endOfGame()) {
+			games.remove(roomID);
+		}
+		return true;
+	}
+	
 	/**
 	 * main() method for starting the server.
 	 * 
 	 * @param args
-	 *            the port to be used by the server. The default port 5000 will
-	 *            be used if no arguments has been supplied
+	 *            the port to be used by the server. The default port 2396 will
+	 *            be used if no port has been supplied. The option "--nio"
+	 *            selects the non-blocking (NIO) transport, "--virtual"
+	 *            runs the client handlers on virtual threads, and
+	 *            "--coalesce=MS" delays the flushes of every room by up to
+	 *            MS milliseconds to send fewer, larger TCP writes,
+	 *            "--secure-shuffle" shuffles the decks with a SecureRandom, and
+	 *            "--metrics=PORT" serves the metrics of the server at
+	 *            http://127.0.0.1:PORT/metrics. "--headless" runs the server
+	 *            without a GUI (as it does when there is no display), writing
+	 *            the log to the standard output, and "--log-rate=N" writes
+	 *            at most N lines of log per second (0 for none).
+	 *            "--max-connections=N" and "--max-rooms=N" limit the numbers
+	 *            of connections and rooms, and "--lobby-timeout=S" closes the
+	 *            connections which have not joined a room within S seconds
+	 *            (0 for no limit)
 	 */
 	public static void main(String[] args) {
-		BigTwoServer server = new BigTwoServer();
-		if (args.length > 0) {
-			server.start(Integer.parseInt(args[0]));
-		} else {
-			server.start(2396);
+		boolean headless = GraphicsEnvironment.isHeadless();
+		for (String arg : args) {
+			if (arg.equals("--headless")) {
+				headless = true;
+			}
+		}
+		BigTwoServer server = new BigTwoServer(headless);
+		int port = 2396;
+		for (String arg : args) {
+			if (arg.equals("--headless")) {
+				// already applied
+			} else if (arg.startsWith("--log-rate=")) {
+				server.setLogRate(Integer.parseInt(arg.substring("--log-rate=".length())));
+			} else if (arg.equals("--nio")) {
+				server.setNioMode(true);
+			} else if (arg.equals("--virtual")) {
+				server.setVirtualThreads(true);
+			} else if (arg.equals("--secure-shuffle")) {
+				server.setRandomGenerator(new SecureRandom());
+			} else if (arg.startsWith("--metrics=")) {
+				server.setMetricsPort(Integer.parseInt(arg.substring("--metrics=".length())));
+			} else if (arg.startsWith("--max-connections=")) {
+				server.setMaxConnections(Integer.parseInt(arg.substring("--max-connections=".length())));
+			} else if (arg.startsWith("--max-rooms=")) {
+				server.setMaxRooms(Integer.parseInt(arg.substring("--max-rooms=".length())));
+			} else if (arg.startsWith("--lobby-timeout=")) {
+				server.setLobbyTimeout(Long.parseLong(arg.substring("--lobby-timeout=".length())) * 1000);
+			} else if (arg.startsWith("--coalesce=")) {
+				server.setDefaultCoalescingDelay(Long.parseLong(arg.substring("--coalesce=".length())));
+			} else {
+				port = Integer.parseInt(arg);
+			}
 		}
+		server.start(port);
 	} // main
 }
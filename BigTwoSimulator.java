@@ -0,0 +1,278 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class is used to play many complete Big Two card games between
+ * computer players, without any user interface, e.g. for balancing the rules
+ * or evaluating a BigTwoStrategy. The games are played by BigTwoEngine on a
+ * fork-join pool, and game i is dealt and played with a random number
+ * generator seeded from (seed, i) only, so a simulation gives the same
+ * results for the same seed whatever the number of threads.
+ *
+ * <pre>
+ * java BigTwoSimulator [games] [seed] [strategy of player 0 .. 3]
+ * java BigTwoSimulator 1000000 42 greedy random random random
+ * </pre>
+ *
+ * The strategies are "random" and "greedy" (see BigTwoStrategy); all players
+ * are random by default, and the last strategy given is used for the players
+ * which follow. The number of threads is that of the common fork-join pool
+ * (set by -Djava.util.concurrent.ForkJoinPool.common.parallelism).
+ *
+ * @author Chan Sze Wing
+ */
+public class BigTwoSimulator {
+	// number of games played by a task without splitting it
+	private static final int GAMES_PER_TASK = 1000;
+
+	private final BigTwoStrategy[] strategies;
+
+	/**
+	 * Creates a simulator of games between players of the specified
+	 * strategies.
+	 *
+	 * @param strategies the strategy of each player (4 players)
+	 */
+	public BigTwoSimulator(BigTwoStrategy[] strategies) {
+		this.strategies = strategies.clone();
+	}
+
+	/**
+	 * Plays games on the common fork-join pool.
+	 *
+	 * @param numOfGames the number of games to be played
+	 * @param seed       the seed of the simulation
+	 * @return the statistics of the games
+	 */
+	public Statistics simulate(long numOfGames, long seed) {
+		return ForkJoinPool.commonPool().invoke(new SimulationTask(seed, 0, numOfGames));
+	}
+
+	/**
+	 * Plays the games from, from + 1, ..., to - 1 of a simulation on the
+	 * calling thread.
+	 *
+	 * @param seed the seed of the simulation
+	 * @param from the index of the first game
+	 * @param to   the index after the last game
+	 * @return the statistics of the games
+	 */
+	public Statistics play(long seed, long from, long to) {
+		Statistics statistics = new Statistics(strategies.length);
+		BigTwoEngine game = new BigTwoEngine();
+		BigTwoDeck deck = new BigTwoDeck();
+		MoveGenerator generator = new MoveGenerator();
+		for (long i = from; i < to; i++) {
+			play(game, deck, generator, new SplittableRandom(gameSeed(seed, i)), statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Returns the seed of a game of a simulation. The index of the game is
+	 * mixed into the seed, as the streams of SplittableRandom objects created
+	 * with nearby seeds overlap.
+	 *
+	 * @param seed the seed of the simulation
+	 * @param i    the index of the game
+	 * @return the seed of the random number generator of the game
+	 */
+	public static long gameSeed(long seed, long i) {
+		// finalizer of MurmurHash3
+		long z = seed + i * 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	// Deals and plays a game to the end
+	private void play(BigTwoEngine game, BigTwoDeck deck, MoveGenerator generator,
+			SplittableRandom random, Statistics statistics) {
+		deck.initialize();
+		deck.shuffle(random);
+		game.start(deck);
+
+		int numOfTurns = 0;
+		while (!game.endOfGame()) {
+			int playerIdx = game.getCurrentPlayerIdx();
+			CardGamePlayer player = game.getPlayerList().get(playerIdx);
+			generator.generate(player, game.getHandsOnTable());
+			boolean mayPass = !game.getHandsOnTable().isEmpty() && game.getHandsOnTable()
+					.get(game.getHandsOnTable().size() - 1).getPlayer() != player;
+			long move = strategies[playerIdx].chooseMove(game, playerIdx, generator, mayPass, random);
+			game.applyMove(playerIdx, (move == BigTwoStrategy.PASS) ? null
+					: MoveGenerator.toCardIdx(move, player.getCardsInHand()));
+			numOfTurns++;
+		}
+
+		// the winner is the player who has just moved
+		statistics.numOfGames++;
+		statistics.numOfTurns += numOfTurns;
+		for (int i = 0; i < statistics.wins.length; i++) {
+			int numOfCards = game.getPlayerList().get(i).getNumOfCards();
+			if (numOfCards == 0) {
+				statistics.wins[i]++;
+			} else {
+				statistics.cardsLeft[i] += numOfCards;
+			}
+		}
+	}
+
+	/**
+	 * This class is used to hold the statistics of a number of games.
+	 */
+	public static class Statistics {
+		private long numOfGames = 0;
+		private long numOfTurns = 0; // moves and passes
+		private final long[] wins;
+		private final long[] cardsLeft; // cards left in the hands of the losers
+
+		/**
+		 * Creates the statistics of no game.
+		 *
+		 * @param numOfPlayers the number of players of a game
+		 */
+		public Statistics(int numOfPlayers) {
+			wins = new long[numOfPlayers];
+			cardsLeft = new long[numOfPlayers];
+		}
+
+		/**
+		 * Adds the statistics of other games to these statistics.
+		 *
+		 * @param other the statistics of the other games
+		 */
+		public void add(Statistics other) {
+			numOfGames += other.numOfGames;
+			numOfTurns += other.numOfTurns;
+			for (int i = 0; i < wins.length; i++) {
+				wins[i] += other.wins[i];
+				cardsLeft[i] += other.cardsLeft[i];
+			}
+		}
+
+		/**
+		 * Returns the number of games played.
+		 *
+		 * @return the number of games
+		 */
+		public long getNumOfGames() {
+			return numOfGames;
+		}
+
+		/**
+		 * Returns the average number of turns (moves and passes) of a game.
+		 *
+		 * @return the average number of turns
+		 */
+		public double getAverageTurns() {
+			return (numOfGames == 0) ? 0 : (double) numOfTurns / numOfGames;
+		}
+
+		/**
+		 * Returns the number of games won by a player.
+		 *
+		 * @param playerIdx the index of the player
+		 * @return the number of wins
+		 */
+		public long getWins(int playerIdx) {
+			return wins[playerIdx];
+		}
+
+		/**
+		 * Returns the fraction of the games won by a player.
+		 *
+		 * @param playerIdx the index of the player
+		 * @return the win rate
+		 */
+		public double getWinRate(int playerIdx) {
+			return (numOfGames == 0) ? 0 : (double) wins[playerIdx] / numOfGames;
+		}
+
+		/**
+		 * Returns the half-width of the 95% confidence interval of the win rate
+		 * of a player (normal approximation).
+		 *
+		 * @param playerIdx the index of the player
+		 * @return the margin of error of the win rate
+		 */
+		public double getWinRateError(int playerIdx) {
+			double p = getWinRate(playerIdx);
+			return (numOfGames == 0) ? 0 : 1.96 * Math.sqrt(p * (1 - p) / numOfGames);
+		}
+
+		/**
+		 * Returns the average number of cards left in the hand of a player in
+		 * the games the player has lost.
+		 *
+		 * @param playerIdx the index of the player
+		 * @return the average number of cards left
+		 */
+		public double getAverageCardsLeft(int playerIdx) {
+			long losses = numOfGames - wins[playerIdx];
+			return (losses == 0) ? 0 : (double) cardsLeft[playerIdx] / losses;
+		}
+	}
+
+	// The task which plays a range of games, splitting it in halves
+	private class SimulationTask extends RecursiveTask<Statistics> {
+		private static final long serialVersionUID = 1L;
+		private final long seed, from, to;
+
+		private SimulationTask(long seed, long from, long to) {
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Statistics compute() {
+			if (to - from <= GAMES_PER_TASK) {
+				return play(seed, from, to);
+			}
+			long middle = from + (to - from) / 2;
+			SimulationTask left = new SimulationTask(seed, from, middle);
+			left.fork();
+			Statistics statistics = new SimulationTask(seed, middle, to).compute();
+			statistics.add(left.join());
+			return statistics;
+		}
+	}
+
+	/**
+	 * main() method for running a simulation.
+	 *
+	 * @param args the number of games (default 100000), the seed (default 1)
+	 *             and the strategies of the players (default random)
+	 */
+	public static void main(String[] args) {
+		long numOfGames = (args.length > 0) ? Long.parseLong(args[0]) : 100000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+		BigTwoStrategy[] strategies = new BigTwoStrategy[4];
+		for (int i = 0; i < strategies.length; i++) {
+			String name = (args.length > 2) ? args[Math.min(2 + i, args.length - 1)] : "random";
+			if (name.equals("random")) {
+				strategies[i] = BigTwoStrategy.RANDOM;
+			} else if (name.equals("greedy")) {
+				strategies[i] = BigTwoStrategy.GREEDY;
+			} else {
+				System.out.println("Unknown strategy: " + name);
+				return;
+			}
+		}
+
+		BigTwoSimulator simulator = new BigTwoSimulator(strategies);
+		long start = System.nanoTime();
+		Statistics statistics = simulator.simulate(numOfGames, seed);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%d games (seed %d) in %.2f s on %d threads: %.0f games/s, %.1f turns/game%n",
+				statistics.getNumOfGames(), seed, seconds, ForkJoinPool.commonPool().getParallelism(),
+				statistics.getNumOfGames() / seconds, statistics.getAverageTurns());
+		for (int i = 0; i < strategies.length; i++) {
+			System.out.printf("player %d  %-8s wins %10d  win rate %6.2f%% +/- %.2f%%  cards left when lost %.2f%n",
+					i, strategies[i], statistics.getWins(i), 100 * statistics.getWinRate(i),
+					100 * statistics.getWinRateError(i), statistics.getAverageCardsLeft(i));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.SplittableRandom;
+
+/**
+ * An interface for choosing the moves of a player in a Big Two card game, e.g.
+ * for the players of BigTwoSimulator. A strategy is shared by the threads of a
+ * simulation, so it must not keep any state between calls; its randomness must
+ * come from the random number generator supplied, which makes a game
+ * reproducible from its seed.
+ *
+ * @author Chan Sze Wing
+ */
+public interface BigTwoStrategy {
+	/**
+	 * The strategy which plays a legal move chosen uniformly at random, where
+	 * passing (if allowed) counts as one of the moves.
+	 */
+	public static final BigTwoStrategy RANDOM = new BigTwoStrategy() {
+		public long chooseMove(BigTwoEngine game, int playerIdx, MoveGenerator moves,
+				boolean mayPass, SplittableRandom random) {
+			int numOfMoves = moves.getNumOfMoves();
+			int i = random.nextInt(numOfMoves + (mayPass ? 1 : 0));
+			return (i < numOfMoves) ? moves.getMove(i) : PASS;
+		}
+
+		public String toString() {
+			return "random";
+		}
+	};
+
+	/**
+	 * The strategy which never passes if it can play: it leads with the hand of
+	 * the most cards (the weakest of them), and otherwise plays the weakest hand
+	 * which beats the table.
+	 */
+	public static final BigTwoStrategy GREEDY = new BigTwoStrategy() {
+		public long chooseMove(BigTwoEngine game, int playerIdx, MoveGenerator moves,
+				boolean mayPass, SplittableRandom random) {
+			long best = PASS;
+			int bestSize = 0, bestKey = 0;
+			for (int i = 0; i < moves.getNumOfMoves(); i++) {
+				int size = Long.bitCount(moves.getMove(i));
+				int key = moves.getKey(i);
+				if (best == PASS || size > bestSize || (size == bestSize && key < bestKey)) {
+					best = moves.getMove(i);
+					bestSize = size;
+					bestKey = key;
+				}
+			}
+			return best;
+		}
+
+		public String toString() {
+			return "greedy";
+		}
+	};
+
+	/**
+	 * The move returned to pass.
+	 */
+	public static final long PASS = 0L;
+
+	/**
+	 * Chooses the move of a player, whose legal moves have already been
+	 * generated.
+	 *
+	 * @param game      the game (which must not be changed)
+	 * @param playerIdx the index of the player who makes the move
+	 * @param moves     the legal moves of the player (passing is not included)
+	 * @param mayPass   whether the player is allowed to pass
+	 * @param random    the random number generator of the game
+	 * @return the 52-bit mask of the cards of the move (one of the moves
+	 *         generated), or PASS to pass (only if allowed, or if there is no
+	 *         legal move)
+	 */
+	public long chooseMove(BigTwoEngine game, int playerIdx, MoveGenerator moves, boolean mayPass,
+			SplittableRandom random);
+}
@@ -0,0 +1,161 @@
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * This class is used to measure the CPU time a server spends on writing a
+ * broadcast to its clients, comparing:
+ * <ul>
+ * <li>per-client encoding, where every MessageWriter encodes the message
+ * again (writeMessage());</li>
+ * <li>encode-once fan-out, where the message is encoded once for each wire
+ * format and the same bytes are written to every client (writeEncoded()).</li>
+ * </ul>
+ *
+ * <pre>
+ * java BroadcastBenchmark                 (default: 4 and 1000 clients)
+ * java BroadcastBenchmark 4 64 1000
+ * </pre>
+ *
+ * Each client is a MessageWriter over a buffered stream which discards its
+ * bytes, so only the encoding and copying are measured, for clients of the
+ * Java serialization format, of the binary format, and of both (half each).
+ * The broadcasts are a mix of the messages of a game (MOVE, MSG, READY and
+ * the occasional START with a whole deck), each followed by a flush. (Below
+ * EncodedMessage.MIN_SHARED_SERIALIZATION_RECIPIENTS clients, the writers of
+ * the Java serialization format encode the message themselves anyway.)
+ *
+ * @author Kenneth Wong
+ *
+ */
+public class BroadcastBenchmark {
+	private static final int WARMUP_MESSAGES = 100000;
+	private static final int MEASURED_MESSAGES = 200000;
+	// the two modes are measured alternately, keeping the best of the rounds,
+	// so that neither profits from the code compiled for the other
+	private static final int ROUNDS = 3;
+
+	/**
+	 * main() method for running the benchmark.
+	 *
+	 * @param args
+	 *            the numbers of clients to be measured (default 4 1000)
+	 * @throws Exception
+	 *             if a message cannot be encoded
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] numsOfClients = { 4, 1000 };
+		if (args.length > 0) {
+			numsOfClients = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				numsOfClients[i] = Integer.parseInt(args[i]);
+			}
+		}
+		CardGameMessage[] messages = createMessages();
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+		System.out.printf("%8s %-13s %14s %14s %8s %12s %12s%n", "clients", "format",
+				"per-client us", "encode-once us", "saved", "bytes/client", "(encode-once)");
+		for (int numOfClients : numsOfClients) {
+			for (String format : new String[] { "serialization", "binary", "mixed" }) {
+				// enough broadcasts for a stable figure, but not too long at 1000
+				int measured = Math.max(2000, MEASURED_MESSAGES / numOfClients);
+				int warmup = Math.max(1000, WARMUP_MESSAGES / numOfClients);
+				long[] perClient = null, encodeOnce = null;
+				for (int round = 0; round < ROUNDS; round++) {
+					perClient = best(perClient,
+							run(bean, messages, numOfClients, format, false, warmup, measured));
+					encodeOnce = best(encodeOnce,
+							run(bean, messages, numOfClients, format, true, warmup, measured));
+				}
+				double perClientMicros = perClient[0] / 1000.0 / measured;
+				double encodeOnceMicros = encodeOnce[0] / 1000.0 / measured;
+				System.out.printf("%8d %-13s %14.2f %14.2f %7.0f%% %12.1f %12.1f%n", numOfClients,
+						format, perClientMicros, encodeOnceMicros,
+						100.0 * (1 - encodeOnceMicros / perClientMicros),
+						(double) perClient[1] / numOfClients / measured,
+						(double) encodeOnce[1] / numOfClients / measured);
+			}
+		}
+	}
+
+	private static long[] best(long[] a, long[] b) {
+		return (a == null || b[0] < a[0]) ? b : a;
+	}
+
+	// Returns the CPU time (ns) of the measured broadcasts and the bytes written
+	private static long[] run(ThreadMXBean bean, CardGameMessage[] messages, int numOfClients,
+			String format, boolean encodeOnce, int warmup, int measured) throws Exception {
+		MessageWriter[] writers = new MessageWriter[numOfClients];
+		for (int i = 0; i < numOfClients; i++) {
+			boolean binary = format.equals("binary") || (format.equals("mixed") && i % 2 == 1);
+			writers[i] = CardGameCodec.newWriter(new BufferedOutputStream(new NullOutputStream()),
+					binary);
+		}
+		for (int n = 0; n < warmup; n++) {
+			broadcast(writers, messages[n % messages.length], encodeOnce);
+		}
+		long bytesBefore = 0;
+		for (MessageWriter writer : writers) {
+			bytesBefore += writer.getBytesWritten();
+		}
+		long start = bean.getCurrentThreadCpuTime();
+		for (int n = 0; n < measured; n++) {
+			broadcast(writers, messages[n % messages.length], encodeOnce);
+		}
+		long cpuTime = bean.getCurrentThreadCpuTime() - start;
+		long bytes = -bytesBefore;
+		for (MessageWriter writer : writers) {
+			bytes += writer.getBytesWritten();
+		}
+		return new long[] { cpuTime, bytes };
+	}
+
+	private static void broadcast(MessageWriter[] writers, CardGameMessage message,
+			boolean encodeOnce) throws Exception {
+		if (encodeOnce) {
+			EncodedMessage encoded = new EncodedMessage(message, writers.length);
+			for (MessageWriter writer : writers) {
+				writer.writeEncoded(encoded);
+			}
+		} else {
+			for (MessageWriter writer : writers) {
+				writer.writeMessage(message);
+			}
+		}
+		for (MessageWriter writer : writers) {
+			writer.flush();
+		}
+	}
+
+	// Creates a cycle of 100 messages resembling the broadcasts of a game
+	private static CardGameMessage[] createMessages() {
+		CardGameMessage[] messages = new CardGameMessage[100];
+		for (int i = 0; i < messages.length; i++) {
+			if (i == 0) {
+				BigTwoDeck deck = new BigTwoDeck();
+				deck.shuffle();
+				messages[i] = new CardGameMessage(CardGameMessage.START, -1, deck);
+			} else if (i % 10 == 1) {
+				messages[i] = new CardGameMessage(CardGameMessage.READY, i % 4, null);
+			} else if (i % 5 == 2) {
+				messages[i] = new CardGameMessage(CardGameMessage.MSG, i % 4,
+						"Player " + i % 4 + ": good game!");
+			} else {
+				messages[i] = new CardGameMessage(CardGameMessage.MOVE, i % 4,
+						new int[] { i % 13, (i + 3) % 13 });
+			}
+		}
+		return messages;
+	}
+
+	// The stream which discards its bytes
+	private static class NullOutputStream extends OutputStream {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -10,6 +10,16 @@ public class Card implements Comparable<Card>, Serializable {
 	static boolean SUPPORT_COLOR = false;
 	private static final char[] SUITS = { '\u2666', '\u2663', '\u2665', '\u2660' }; // {Diamond, Club, Heart, Spade}
 	private static final char[] RANKS = { 'A', '2', '3', '4', '5', '6', '7', '8', '9', '0', 'J', 'Q', 'K' };
+	// shared instances, indexed by suit * 13 + rank
+	private static final Card[] CARDS = new Card[52];
+
+	static {
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 13; j++) {
+				CARDS[i * 13 + j] = new Card(i, j);
+			}
+		}
+	}
 
 	protected final int suit; // 0 - 3
 	protected final int rank; // 0 - 12
@@ -30,6 +40,23 @@ public class Card implements Comparable<Card>, Serializable {
 		this.rank = rank;
 	}
 
+	/**
+	 * Returns a shared instance of the Card class, which saves allocating a
+	 * new card for every deck (a card cannot be modified).
+	 * 
+	 * @param suit an int value between 0 and 3 representing the suit of a card:
+	 *             <p>
+	 *             0 = Diamond, 1 = Club, 2 = Heart, 3 = Spade
+	 * @param rank an int value between 0 and 12 representing the rank of a card:
+	 *             <p>
+	 *             0 = 'A', 1 = '2', 2 = '3', ..., 8 = '9', 9 = '0', 10 = 'J', 11 =
+	 *             'Q', 12 = 'K'
+	 * @return the shared instance of the card with the specified suit and rank
+	 */
+	public static Card valueOf(int suit, int rank) {
+		return CARDS[suit * 13 + rank];
+	}
+
 	/**
 	 * Returns the suit of a card.
 	 * 
@@ -95,6 +122,9 @@ public class Card implements Comparable<Card>, Serializable {
 	 *         false otherwise
 	 */
 	public boolean equals(Object card) {
+		if (this == card) {
+			return true;
+		}
 		return (this.rank == ((Card) card).getRank() && suit == ((Card) card).getSuit());
 	}
 
@@ -104,6 +134,6 @@ public class Card implements Comparable<Card>, Serializable {
 	 * @return a hash code value for the card
 	 */
 	public int hashCode() {
-		return rank;
+		return suit * 13 + rank;
 	}
 }
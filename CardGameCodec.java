@@ -0,0 +1,604 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is used to encode and decode the messages of a network card game
+ * in one of two wire formats:
+ * <ul>
+ * <li>Java serialization (the original format), where each message is an
+ * object graph written by a ManagedObjectOutputStream;</li>
+ * <li>a compact binary format, where a stream starts with the bytes 0xB2 0x02
+ * and each message is written as
+ * <pre>
+ * length (varint) | type (varint) | playerID (zig-zag varint) | tag (byte) | payload
+ * </pre>
+ * with the length counting the bytes after it, and the payload depending on
+ * the type of the data: a string is its UTF-8 bytes, an array of int is a
+ * list of varints, and a deck is its cards packed as 6-bit codes (suit * 13 +
+ * rank). Any other data falls back to Java serialization inside the
+ * payload.</li>
+ * </ul>
+ * A MessageReader detects the format from the first byte of the stream, so a
+ * server can serve clients of both formats and answer each one in its own
+ * format. As a binary message starts with its length, a non-blocking reader
+ * can tell whether it has arrived completely before decoding it (see
+ * frameLength()).
+ * 
+ * @author Kenneth Wong
+ * 
+ */
+public final class CardGameCodec {
+	/**
+	 * The first byte of a stream in the binary format. (A stream written by an
+	 * ObjectOutputStream starts with 0xAC.)
+	 */
+	public static final int BINARY_MAGIC = 0xB2;
+	/**
+	 * The version of the binary format, which follows BINARY_MAGIC.
+	 */
+	public static final int BINARY_VERSION = 2;
+	/**
+	 * The maximum number of bytes of a binary message (including its length).
+	 * A longer message is rejected as malformed, and a server does not hold
+	 * more bytes than this for a message which is being received.
+	 */
+	public static final int MAX_MESSAGE_SIZE = 1 << 20;
+
+	// tags of the payload of a binary message
+	private static final int TAG_NULL = 0;
+	private static final int TAG_STRING = 1;
+	private static final int TAG_STRING_ARRAY = 2;
+	private static final int TAG_INT_ARRAY = 3;
+	private static final int TAG_DECK = 4;
+	private static final int TAG_OBJECT = 5;
+	// kinds of the cards of an encoded deck
+	private static final int DECK_CARD = 0;
+	private static final int DECK_BIG_TWO = 1;
+	// upper bound of the length of a decoded array, string or serialized object
+	private static final int MAX_LENGTH = 1 << 16;
+
+	private CardGameCodec() {
+	}
+
+	/**
+	 * Creates a writer for the specified stream and writes the stream header.
+	 * The header is flushed with the first message.
+	 * 
+	 * @param out
+	 *            the stream to be written (which should be buffered, as the
+	 *            binary format writes a message in many small pieces)
+	 * @param binary
+	 *            true for the binary format; false for Java serialization
+	 * @return the writer
+	 * @throws IOException
+	 *             if an I/O error occurs when writing the header
+	 */
+	public static MessageWriter newWriter(OutputStream out, boolean binary) throws IOException {
+		if (binary) {
+			return new BinaryWriter(out);
+		}
+		return new SerializationWriter(out);
+	}
+
+	/**
+	 * Creates a reader for the specified stream, reading its header to detect
+	 * the format of the stream. Blocks until the header has been received.
+	 * 
+	 * @param in
+	 *            the stream to be read
+	 * @return the reader
+	 * @throws IOException
+	 *             if an I/O error occurs or the stream has an unknown format
+	 */
+	public static MessageReader newReader(InputStream in) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, 1);
+		int first = pin.read();
+		if (first < 0) {
+			throw new EOFException();
+		}
+		if (first == BINARY_MAGIC) {
+			int version = pin.read();
+			if (version != BINARY_VERSION) {
+				throw new StreamCorruptedException("Unsupported binary version: " + version);
+			}
+			return new BinaryReader(pin);
+		}
+		pin.unread(first);
+		return new SerializationReader(pin);
+	}
+
+	/**
+	 * Returns true if the specified buffer holds enough bytes to tell the
+	 * format of the stream which starts at its position (for a non-blocking
+	 * reader).
+	 * 
+	 * @param buffer
+	 *            the first bytes received, in read mode
+	 * @return true if readBinaryHeader() can tell the format
+	 */
+	public static boolean hasHeader(ByteBuffer buffer) {
+		int p = buffer.position();
+		return buffer.remaining() >= 2
+				|| (buffer.hasRemaining() && (buffer.get(p) & 0xff) != BINARY_MAGIC);
+	}
+
+	/**
+	 * Reads the header of a stream in the binary format from the specified
+	 * buffer (for a non-blocking reader). The buffer is left as it is if the
+	 * stream is in the Java serialization format.
+	 * 
+	 * @param buffer
+	 *            the first bytes received, in read mode, for which hasHeader()
+	 *            is true
+	 * @return true if the stream is in the binary format (and its header has
+	 *         been consumed); false for Java serialization
+	 * @throws StreamCorruptedException
+	 *             if the stream has an unsupported version of the binary
+	 *             format
+	 */
+	public static boolean readBinaryHeader(ByteBuffer buffer) throws StreamCorruptedException {
+		int p = buffer.position();
+		if ((buffer.get(p) & 0xff) != BINARY_MAGIC) {
+			return false;
+		}
+		int version = buffer.get(p + 1) & 0xff;
+		if (version != BINARY_VERSION) {
+			throw new StreamCorruptedException("Unsupported binary version: " + version);
+		}
+		buffer.position(p + 2);
+		return true;
+	}
+
+	/**
+	 * Returns the number of bytes of the binary message which starts at the
+	 * position of the specified buffer (including its length), if the buffer
+	 * holds all of them. The buffer is not modified.
+	 * 
+	 * @param buffer
+	 *            the bytes received, in read mode
+	 * @return the number of bytes of the message, or -1 if it has not arrived
+	 *         completely
+	 * @throws StreamCorruptedException
+	 *             if the length of the message is malformed or larger than
+	 *             MAX_MESSAGE_SIZE
+	 */
+	public static int frameLength(ByteBuffer buffer) throws StreamCorruptedException {
+		int p = buffer.position();
+		int length = 0;
+		for (int i = 0; i < 5; i++) {
+			if (p + i >= buffer.limit()) {
+				return -1;
+			}
+			int b = buffer.get(p + i) & 0xff;
+			length |= (b & 0x7f) << (7 * i);
+			if ((b & 0x80) == 0) {
+				int frameLength = checkFrameLength(length, i + 1);
+				return (buffer.remaining() >= frameLength) ? frameLength : -1;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	/**
+	 * Writes a message in the binary format (without the stream header).
+	 * 
+	 * @param out
+	 *            the stream to be written
+	 * @param message
+	 *            the message to be written
+	 * @throws IOException
+	 *             if an I/O error occurs, or the message is longer than
+	 *             MAX_MESSAGE_SIZE
+	 */
+	public static void encode(DataOutputStream out, GameMessage message) throws IOException {
+		// the message is encoded first, as its length goes before it
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		encodeBody(new DataOutputStream(bytes), message);
+		checkFrameLength(bytes.size(), varintSize(bytes.size()));
+		writeVarint(out, bytes.size());
+		bytes.writeTo(out);
+	}
+
+	// Writes a message without its length
+	private static void encodeBody(DataOutputStream out, GameMessage message) throws IOException {
+		writeVarint(out, message.getType());
+		writeVarint(out, (message.getPlayerID() << 1) ^ (message.getPlayerID() >> 31));
+		Object data = message.getData();
+		if (data == null) {
+			out.writeByte(TAG_NULL);
+		} else if (data instanceof String) {
+			out.writeByte(TAG_STRING);
+			writeString(out, (String) data);
+		} else if (data instanceof String[]) {
+			String[] strings = (String[]) data;
+			out.writeByte(TAG_STRING_ARRAY);
+			writeVarint(out, strings.length);
+			for (String s : strings) {
+				writeString(out, s);
+			}
+		} else if (data instanceof int[]) {
+			int[] ints = (int[]) data;
+			out.writeByte(TAG_INT_ARRAY);
+			writeVarint(out, ints.length);
+			for (int i : ints) {
+				writeVarint(out, (i << 1) ^ (i >> 31));
+			}
+		} else if (data.getClass() == BigTwoDeck.class || data.getClass() == Deck.class) {
+			Deck deck = (Deck) data;
+			out.writeByte(TAG_DECK);
+			out.writeByte(data.getClass() == BigTwoDeck.class ? DECK_BIG_TWO : DECK_CARD);
+			writeVarint(out, deck.size());
+			// packs the 6-bit codes of the cards, 4 cards in every 3 bytes
+			int bits = 0, numOfBits = 0;
+			for (int i = 0; i < deck.size(); i++) {
+				Card card = deck.getCard(i);
+				bits = (bits << 6) | (card.getSuit() * 13 + card.getRank());
+				numOfBits += 6;
+				if (numOfBits >= 8) {
+					numOfBits -= 8;
+					out.writeByte(bits >>> numOfBits);
+				}
+			}
+			if (numOfBits > 0) {
+				out.writeByte(bits << (8 - numOfBits));
+			}
+		} else {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(data);
+			oos.close();
+			out.writeByte(TAG_OBJECT);
+			writeVarint(out, bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+
+	/**
+	 * Reads a message in the binary format (without the stream header).
+	 * Blocks until the message has been received completely.
+	 * 
+	 * @param in
+	 *            the stream to be read
+	 * @return the message read
+	 * @throws IOException
+	 *             if an I/O error occurs or the message is malformed
+	 * @throws ClassNotFoundException
+	 *             if the serialized data of the message refers to an unknown
+	 *             class
+	 */
+	public static CardGameMessage decode(DataInputStream in) throws IOException, ClassNotFoundException {
+		int length = readVarint(in);
+		checkFrameLength(length, varintSize(length));
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return decodeBody(bytes, 0, length);
+	}
+
+	/**
+	 * Decodes a binary message which has been received completely, e.g. by a
+	 * non-blocking reader (see frameLength()).
+	 * 
+	 * @param bytes
+	 *            the bytes received
+	 * @param offset
+	 *            the index of the first byte of the message (its length)
+	 * @param length
+	 *            the number of bytes of the message, as returned by
+	 *            frameLength()
+	 * @return the message decoded
+	 * @throws IOException
+	 *             if the message is malformed
+	 * @throws ClassNotFoundException
+	 *             if the serialized data of the message refers to an unknown
+	 *             class
+	 */
+	public static CardGameMessage decode(byte[] bytes, int offset, int length)
+			throws IOException, ClassNotFoundException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length));
+		int bodyLength = readVarint(in);
+		int prefixLength = varintSize(bodyLength);
+		if (checkFrameLength(bodyLength, prefixLength) != length) {
+			throw new StreamCorruptedException("Invalid length: " + bodyLength);
+		}
+		return decodeBody(bytes, offset + prefixLength, bodyLength);
+	}
+
+	// Decodes a message from its bytes without its length
+	private static CardGameMessage decodeBody(byte[] bytes, int offset, int length)
+			throws IOException, ClassNotFoundException {
+		ByteArrayInputStream body = new ByteArrayInputStream(bytes, offset, length);
+		DataInputStream in = new DataInputStream(body);
+		CardGameMessage message;
+		try {
+			message = decodeFields(in);
+		} catch (EOFException ex) {
+			throw new StreamCorruptedException("Truncated message");
+		}
+		if (body.available() > 0) {
+			throw new StreamCorruptedException("Unexpected bytes after a message");
+		}
+		return message;
+	}
+
+	// Decodes the fields of a message
+	private static CardGameMessage decodeFields(DataInputStream in) throws IOException, ClassNotFoundException {
+		int type = readVarint(in);
+		int zigzag = readVarint(in);
+		int playerID = (zigzag >>> 1) ^ -(zigzag & 1);
+		Object data;
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case TAG_NULL:
+			data = null;
+			break;
+		case TAG_STRING:
+			data = readString(in);
+			break;
+		case TAG_STRING_ARRAY: {
+			String[] strings = new String[readLength(in)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = readString(in);
+			}
+			data = strings;
+			break;
+		}
+		case TAG_INT_ARRAY: {
+			int[] ints = new int[readLength(in)];
+			for (int i = 0; i < ints.length; i++) {
+				int z = readVarint(in);
+				ints[i] = (z >>> 1) ^ -(z & 1);
+			}
+			data = ints;
+			break;
+		}
+		case TAG_DECK: {
+			boolean bigTwo = (in.readUnsignedByte() == DECK_BIG_TWO);
+			Deck deck = bigTwo ? new BigTwoDeck() : new Deck();
+			deck.removeAllCards();
+			int size = readLength(in);
+			int bits = 0, numOfBits = 0;
+			for (int i = 0; i < size; i++) {
+				if (numOfBits < 6) {
+					bits = (bits << 8) | in.readUnsignedByte();
+					numOfBits += 8;
+				}
+				numOfBits -= 6;
+				int code = (bits >>> numOfBits) & 0x3f;
+				if (code >= 52) {
+					throw new StreamCorruptedException("Invalid card code: " + code);
+				}
+				deck.addCard(bigTwo ? BigTwoCard.valueOf(code / 13, code % 13)
+						: Card.valueOf(code / 13, code % 13));
+			}
+			data = deck;
+			break;
+		}
+		case TAG_OBJECT: {
+			byte[] bytes = new byte[readLength(in)];
+			in.readFully(bytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			data = ois.readObject();
+			break;
+		}
+		default:
+			throw new StreamCorruptedException("Invalid payload tag: " + tag);
+		}
+		return new CardGameMessage(type, playerID, data);
+	}
+
+	// Writes an unsigned varint (7 bits per byte, least significant first)
+	private static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	// Returns the number of bytes of a varint
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	// Checks the length of a message, and returns the number of bytes of the
+	// message with its length
+	private static int checkFrameLength(int length, int prefixLength) throws StreamCorruptedException {
+		if (length < 0 || length > MAX_MESSAGE_SIZE - prefixLength) {
+			throw new StreamCorruptedException("Invalid message length: " + length);
+		}
+		return prefixLength + length;
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = readVarint(in);
+		if (length < 0 || length > MAX_LENGTH) {
+			throw new StreamCorruptedException("Invalid length: " + length);
+		}
+		return length;
+	}
+
+	// Writes a nullable string as its length + 1 (0 for null) and UTF-8 bytes
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarint(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readLength(in);
+		if (length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// The writer of the binary format
+	private static class BinaryWriter implements MessageWriter {
+		private final OutputStream raw;
+		private final CountingDataOutputStream out;
+		private long bytesWritten = 0;
+
+		public BinaryWriter(OutputStream out) throws IOException {
+			this.raw = out;
+			this.out = new CountingDataOutputStream(out);
+			this.out.writeByte(BINARY_MAGIC);
+			this.out.writeByte(BINARY_VERSION);
+		}
+
+		public void writeMessage(GameMessage message) throws IOException {
+			encode(out, message);
+			bytesWritten += out.takeCount();
+		}
+
+		public void writeEncoded(EncodedMessage message) throws IOException {
+			// a DataOutputStream does not buffer, so the payload can follow
+			// directly on the underlying stream
+			bytesWritten += message.writeBinary(raw);
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		public boolean isBinary() {
+			return true;
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten + out.size();
+		}
+
+		public int getRetainedObjects() {
+			return 0;
+		}
+
+		public long getRetainedBytes() {
+			return 0;
+		}
+	}
+
+	// A DataOutputStream whose (int) byte count is moved to a long counter
+	private static class CountingDataOutputStream extends DataOutputStream {
+		public CountingDataOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public int takeCount() {
+			int count = written;
+			written = 0;
+			return count;
+		}
+	}
+
+	// The reader of the binary format
+	private static class BinaryReader implements MessageReader {
+		private final DataInputStream in;
+
+		public BinaryReader(InputStream in) {
+			this.in = new DataInputStream(in);
+		}
+
+		public GameMessage readMessage() throws IOException, ClassNotFoundException {
+			return decode(in);
+		}
+
+		public boolean isBinary() {
+			return true;
+		}
+	}
+
+	// The writer of the Java serialization format
+	private static class SerializationWriter implements MessageWriter {
+		private final ManagedObjectOutputStream out;
+
+		public SerializationWriter(OutputStream out) throws IOException {
+			this.out = new ManagedObjectOutputStream(out);
+		}
+
+		public void writeMessage(GameMessage message) throws IOException {
+			out.writeMessage(message);
+		}
+
+		public void writeEncoded(EncodedMessage message) throws IOException {
+			// a self-contained payload is much larger than a message written
+			// with back-references, which only pays for a large fan-out
+			if (message.getNumOfRecipients() >= EncodedMessage.MIN_SHARED_SERIALIZATION_RECIPIENTS) {
+				out.writeEncoded(message);
+			} else {
+				out.writeMessage(message.getMessage());
+			}
+		}
+
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		public boolean isBinary() {
+			return false;
+		}
+
+		public long getBytesWritten() {
+			return out.getBytesWritten();
+		}
+
+		public int getRetainedObjects() {
+			return out.getRetainedObjects();
+		}
+
+		public long getRetainedBytes() {
+			return out.getRetainedBytes();
+		}
+	}
+
+	// The reader of the Java serialization format
+	private static class SerializationReader implements MessageReader {
+		private final ObjectInputStream in;
+
+		public SerializationReader(InputStream in) throws IOException {
+			this.in = new ObjectInputStream(in);
+		}
+
+		public GameMessage readMessage() throws IOException, ClassNotFoundException {
+			return (GameMessage) in.readObject();
+		}
+
+		public boolean isBinary() {
+			return false;
+		}
+	}
+}
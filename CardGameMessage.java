@@ -7,23 +7,26 @@
 public class CardGameMessage extends GameMessage {
 	private static final long serialVersionUID = -4847411748052026276L;
 	/**
-	 * Sent by the server to a client when a connection is established. In this
-	 * message, playerID specifies the playerID of the local player, and data is
-	 * a reference to a regular array of strings specifying the names of the
-	 * players
+	 * Sent by the server to a client when it joins a room. In this message,
+	 * playerID specifies the playerID of the local player, and data is a
+	 * reference to a regular array of strings specifying the names of the
+	 * players in the room
 	 */
 	public static final int PLAYER_LIST = 0;
 	/**
-	 * Sent by a client to the server when a connection is established. In this
-	 * message, playerID specifies the playerID of the player, and data is
-	 * simply null (not being used).
+	 * Sent by a client to the server to join a room (table) of the server. In
+	 * this message, playerID specifies the ID of the room (-1 for the default
+	 * room), and data is the name of the player. The server answers with a
+	 * PLAYER_LIST message (or a FULL message if the room is full) and then
+	 * broadcasts this message to the room, with playerID specifying the
+	 * playerID of the new player.
 	 */
 	public static final int JOIN = 1;
 	/**
-	 * Sent by the server to a client after a connection is established but the
-	 * server is not able to serve this client because it is full. In this
-	 * message, playerID is -1 (not being used) and data is simply null (not
-	 * being used).
+	 * Sent by the server to a client when the room requested by its JOIN
+	 * message is full. The connection stays open, so that the client can join
+	 * another room. In this message, playerID is -1 (not being used) and data
+	 * is simply null (not being used).
 	 */
 	public static final int FULL = 2;
 	/**
@@ -57,6 +60,20 @@ public class CardGameMessage extends GameMessage {
 	 * sent this chat message, and data is a reference to a string containing a formated chat message.
 	 */
 	public static final int MSG = 7;
+	/**
+	 * Sent by the server to a client when the MOVE message from this client is
+	 * rejected by the rules of the game (only used by servers which validate
+	 * moves). In this message, playerID specifies the player who made the move,
+	 * and data is a reference to the array of int from the rejected MOVE message.
+	 */
+	public static final int INVALID_MOVE = 8;
+	/**
+	 * The number of message types, i.e. one more than the largest type.
+	 */
+	public static final int NUM_OF_TYPES = 9;
+	// names of the message types, indexed by type
+	private static final String[] TYPE_NAMES = { "PLAYER_LIST", "JOIN", "FULL", "QUIT", "READY",
+			"START", "MOVE", "MSG", "INVALID_MOVE" };
 
 	/**
 	 * Creates and returns an instance of CardGameMessage.
@@ -71,4 +88,16 @@ public class CardGameMessage extends GameMessage {
 	public CardGameMessage(int type, int playerID, Object data) {
 		super(type, playerID, data);
 	}
+
+	/**
+	 * Returns the name of a message type, e.g. "MOVE" for MOVE.
+	 * 
+	 * @param type
+	 *            the message type
+	 * @return the name of the message type, or the type as a string if it is
+	 *         not a known type
+	 */
+	public static String getTypeName(int type) {
+		return (type >= 0 && type < NUM_OF_TYPES) ? TYPE_NAMES[type] : String.valueOf(type);
+	}
 }
@@ -60,9 +60,7 @@ public class CardGamePlayer {
 	 * @param cards the list of cards to be removed from this player
 	 */
 	public void removeCards(CardList cards) {
-		for (int i = 0; i < cards.size(); i++) {
-			cardsInHand.removeCard(cards.getCard(i));
-		}
+		cardsInHand.removeCards(new BigTwoCardSet(cards));
 	}
 
 	/**
@@ -1,10 +1,37 @@
+import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -12,9 +39,19 @@ import javax.swing.JMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
 
 /**
- * This class is used to model a card game server.
+ * This class is used to model a card game server. A client connects to the
+ * lobby of the server, and then joins one of its rooms (tables) with a JOIN
+ * message; each room hosts its own game, so that one server can run many
+ * games at the same time.
+ * <p>
+ * The log of the server is shown in a console window, or written to the
+ * standard output by a headless server (e.g. in a container). Either way it
+ * goes through an AsyncLogSink, so the threads serving the clients never wait
+ * for the log, and under load its lines are rate-limited.
  * 
  * @author Kenneth Wong
  *
@@ -24,27 +61,88 @@ public class CardGameServer {
 	boolean silentMode = true;
 	// The name of this card game server
 	private String serverName;
-	// The maximum number of players in a card game
+	// The maximum number of players in a card game (i.e. in each room)
 	private final int maxNumOfPlayers;
-	// Array for holding sockets of the clients
-	private Socket[] clientSockets;
-	// Array for holding ObjectOutputStreams of the clients
-	private ObjectOutputStream[] clientOutputStreams;
-	// Array for holding player names of the clients
-	private String[] clientNames;
-	// Array for holding ready states of the clients
-	private boolean[] clientReadyStates;
-	// number of current players
-	private int numOfPlayers = 0;
-	// the main frame of the server
+	// The ID of the room joined by a client which does not specify a room
+	public static final int DEFAULT_ROOM_ID = 0;
+	// The default maximum number of client connections (see setMaxConnections())
+	public static final int DEFAULT_MAX_CONNECTIONS = 10000;
+	// The default maximum number of rooms (see setMaxRooms())
+	public static final int DEFAULT_MAX_ROOMS = 2500;
+	// The default time (in milliseconds) a client may stay in the lobby
+	// without joining a room (see setLobbyTimeout())
+	public static final long DEFAULT_LOBBY_TIMEOUT = 60000;
+	// the rooms of the server with at least one player, indexed by their IDs
+	private final ConcurrentHashMap<Integer, Room> rooms = new ConcurrentHashMap<Integer, Room>();
+	// the room of each client which has joined one
+	private final ConcurrentHashMap<Socket, Room> clientRooms = new ConcurrentHashMap<Socket, Room>();
+	// message writers of the connected clients (in the lobby or in a room),
+	// created in the wire format of a client when its first bytes arrive
+	private final ConcurrentHashMap<Socket, MessageWriter> clientOutputStreams = new ConcurrentHashMap<Socket, MessageWriter>();
+	// a boolean indicating if the server runs without a GUI
+	private final boolean headless;
+	// the main frame of the server (null if headless)
 	private JFrame frame = null;
-	// text area for displaying server states
+	// text area for displaying server states (null if headless)
 	private JTextArea textArea = null;
+	// maximum number of lines kept in the text area
+	private static final int MAX_CONSOLE_LINES = 5000;
+	// the log of the server, written to the text area or the standard output
+	private final AsyncLogSink log;
 	// a boolean indicating if the server is up
 	private boolean serverUp = false;
+	// a boolean indicating if the non-blocking (NIO) transport is used
+	private boolean nioMode = false;
+	// handlers of the NIO connections, indexed by their sockets
+	private final ConcurrentHashMap<Socket, NioClientHandler> nioHandlers = new ConcurrentHashMap<Socket, NioClientHandler>();
+	// thread pool for decoding the binary messages received by the NIO
+	// transport (which never waits for a client)
+	private ExecutorService nioDecoders = null;
+	// threads reading the Java serialization streams of the NIO transport
+	private ExecutorService nioStreamReaders = null;
+	// maximum time (in milliseconds) a stream reader waits for the rest of a
+	// message
+	private static final long NIO_READ_TIMEOUT = 30000;
+	// factory for the threads of the client handlers (null for platform threads)
+	private ThreadFactory virtualThreadFactory = null;
+	// coalescing delays (in milliseconds) of the rooms which do not flush
+	// their messages at every flush point, indexed by room IDs
+	private final ConcurrentHashMap<Integer, Long> coalescingDelays = new ConcurrentHashMap<Integer, Long>();
+	// default coalescing delay of the other rooms
+	private volatile long defaultCoalescingDelay = 0;
+	// random number generator shuffling the decks (null for the generator of
+	// the thread starting the game)
+	private volatile RandomGenerator random = null;
+	// thread for the delayed flushes of the coalescing rooms and the other
+	// timers of the server (which creates its thread on the first timer)
+	private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+	// maximum number of pending connections waiting to be accepted; the
+	// default of 50 drops the connections of a burst of clients
+	private static final int ACCEPT_BACKLOG = 4096;
+	// the sockets of the open client connections
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	// the metrics of the server
+	private final ServerMetrics metrics = new ServerMetrics(this);
+	// port of the plain-text endpoint of the metrics (-1 for none)
+	private volatile int metricsPort = -1;
+	// maximum numbers of client connections and of rooms
+	private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private volatile int maxRooms = DEFAULT_MAX_ROOMS;
+	// number of rooms created and not yet removed
+	private final AtomicInteger numOfRoomSlots = new AtomicInteger();
+	// creates a room unless the server has the maximum number of rooms (called
+	// by computeIfAbsent(), so only one room is counted for an ID)
+	private final Function<Integer, Room> roomFactory = new Function<Integer, Room>() {
+		public Room apply(Integer roomID) {
+			return reserveRoom() ? new Room(roomID) : null;
+		}
+	};
+	// maximum time (in milliseconds) in the lobby without joining a room
+	private volatile long lobbyTimeout = DEFAULT_LOBBY_TIMEOUT;
 
 	/**
-	 * Creates and returns an instance of the BigTwoServer class.
+	 * Creates and returns an instance of the BigTwoServer class, with a GUI
+	 * unless there is no display.
 	 * 
 	 * @param serverName
 	 *            the name of this card game server
@@ -52,17 +150,60 @@ public class CardGameServer {
 	 *            the maximum number of players in a card game
 	 */
 	public CardGameServer(String serverName, int maxNumOfPlayers) {
+		this(serverName, maxNumOfPlayers, GraphicsEnvironment.isHeadless());
+	}
+
+	/**
+	 * Creates and returns an instance of the BigTwoServer class.
+	 * 
+	 * @param serverName
+	 *            the name of this card game server
+	 * @param maxNumOfPlayers
+	 *            the maximum number of players in a card game
+	 * @param headless
+	 *            true to run without a GUI, writing the log to the standard
+	 *            output; false to show the log in a window
+	 */
+	public CardGameServer(String serverName, int maxNumOfPlayers, boolean headless) {
 		this.serverName = serverName;
 		this.maxNumOfPlayers = maxNumOfPlayers;
+		this.headless = headless;
 
-		// creates arrays for holding client sockets, output streams, player
-		// names, and ready states
-		clientSockets = new Socket[maxNumOfPlayers];
-		clientOutputStreams = new ObjectOutputStream[maxNumOfPlayers];
-		clientNames = new String[maxNumOfPlayers];
-		clientReadyStates = new boolean[maxNumOfPlayers];
-
-		buildGUI();
+		if (headless) {
+			log = new AsyncLogSink(serverName + " log", AsyncLogSink.DEFAULT_CAPACITY,
+					AsyncLogSink.DEFAULT_MAX_LINES_PER_SECOND, new Consumer<List<String>>() {
+						public void accept(List<String> lines) {
+							StringBuilder text = new StringBuilder();
+							for (String line : lines) {
+								text.append(line).append('\n');
+							}
+							System.out.print(text);
+							System.out.flush();
+						}
+					});
+			// writes what is still queued when the server is stopped
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					try {
+						log.close(1000);
+					} catch (InterruptedException ex) {
+						// exits anyway
+					}
+				}
+			});
+		} else {
+			buildGUI();
+			log = new AsyncLogSink(serverName + " log", AsyncLogSink.DEFAULT_CAPACITY,
+					AsyncLogSink.DEFAULT_MAX_LINES_PER_SECOND, new Consumer<List<String>>() {
+						public void accept(final List<String> lines) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									appendToConsole(lines);
+								}
+							});
+						}
+					});
+		}
 	}
 
 	/**
@@ -84,10 +225,13 @@ public class CardGameServer {
 		// build the menu bar
 		JMenuItem clearMenuItem = new JMenuItem("Clear console");
 		clearMenuItem.addActionListener(new ClearMenuItemListener());
+		JMenuItem statsMenuItem = new JMenuItem("Connection statistics");
+		statsMenuItem.addActionListener(new StatsMenuItemListener());
 		JMenuItem quitMenuItem = new JMenuItem("Quit");
 		quitMenuItem.addActionListener(new QuitMenuItemListener());
 		JMenu menu = new JMenu("Option");
 		menu.add(clearMenuItem);
+		menu.add(statsMenuItem);
 		menu.add(quitMenuItem);
 		JMenuBar menuBar = new JMenuBar();
 		menuBar.add(menu);
@@ -97,6 +241,192 @@ public class CardGameServer {
 		frame.setVisible(true);
 	} // buildGUI
 
+	/**
+	 * Checks if the server runs without a GUI.
+	 * 
+	 * @return true if the log is written to the standard output, false if it
+	 *         is shown in a window
+	 */
+	public boolean isHeadless() {
+		return headless;
+	}
+
+	/**
+	 * Sets the maximum number of lines per second written to the log; the
+	 * lines beyond are dropped, and the log tells how many were dropped. The
+	 * default is AsyncLogSink.DEFAULT_MAX_LINES_PER_SECOND.
+	 * 
+	 * @param linesPerSecond
+	 *            the maximum number of lines per second (0 for no log)
+	 */
+	public void setLogRate(int linesPerSecond) {
+		log.setMaxLinesPerSecond(linesPerSecond);
+	}
+
+	/**
+	 * Selects the transport used by start(). By default every client is
+	 * served by its own thread with blocking sockets. With the NIO transport,
+	 * one selector thread does all socket I/O and a small thread pool decodes
+	 * the received messages, so idle clients do not hold any thread, and each
+	 * client has its own write queue so a slow client cannot stall the
+	 * broadcasts to the others. The pool only decodes binary messages which
+	 * have arrived completely, so a client sending part of a message cannot
+	 * hold its threads; the clients of the Java serialization format, whose
+	 * messages cannot be told apart before they are decoded, are read on
+	 * threads of their own, which wait for the rest of a message.
+	 * 
+	 * @param nioMode
+	 *            true to use the non-blocking (NIO) transport
+	 */
+	public void setNioMode(boolean nioMode) {
+		this.nioMode = nioMode;
+	}
+
+	/**
+	 * Selects the kind of threads running the client handlers of the default
+	 * (blocking) transport. Virtual threads make idle connections cheap, so
+	 * that a server can hold a very large number of them. They require Java
+	 * 21 or later; on older runtimes the server keeps using platform threads.
+	 * 
+	 * @param virtualThreads
+	 *            true to run the client handlers on virtual threads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		virtualThreadFactory = null;
+		if (virtualThreads) {
+			try {
+				// Thread.ofVirtual().factory(), looked up reflectively so that
+				// the server still compiles and runs on older runtimes
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				virtualThreadFactory = (ThreadFactory) Class
+						.forName("java.lang.Thread$Builder")
+						.getMethod("factory").invoke(builder);
+			} catch (Exception ex) {
+				println("Virtual threads are not supported by this Java runtime; "
+						+ "using platform threads.");
+				if (!silentMode) ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Sets the random number generator used to shuffle the deck of every new
+	 * game, e.g. a SecureRandom for ranked games. As the games of different
+	 * rooms may start concurrently, the generator must be thread-safe. By
+	 * default (or if null is supplied), each thread shuffles with a generator
+	 * of its own (see Deck.getThreadRandom()).
+	 * 
+	 * @param random
+	 *            the random number generator, or null for the default
+	 */
+	public void setRandomGenerator(RandomGenerator random) {
+		this.random = random;
+	}
+
+	/**
+	 * Sets the coalescing delay of the rooms without a delay of their own
+	 * (see setCoalescingDelay()).
+	 * 
+	 * @param delayMillis
+	 *            the delay in milliseconds (0 to flush at every flush point)
+	 */
+	public void setDefaultCoalescingDelay(long delayMillis) {
+		defaultCoalescingDelay = Math.max(0, delayMillis);
+	}
+
+	/**
+	 * Sets the coalescing delay of a room. Messages to the clients of a room
+	 * are buffered and flushed together at flush points, i.e. when the server
+	 * has finished handling a message (a move, a player joining, ...). With a
+	 * delay of 0 (the default) the buffers are flushed at every flush point;
+	 * with a positive delay, the first flush point schedules a flush after the
+	 * delay, and the messages of all the flush points until then are sent
+	 * together, trading latency for fewer and larger TCP writes (like Nagle's
+	 * algorithm, but at message boundaries).
+	 * 
+	 * @param roomID
+	 *            the ID of the room
+	 * @param delayMillis
+	 *            the delay in milliseconds (0 to flush at every flush point)
+	 */
+	public void setCoalescingDelay(int roomID, long delayMillis) {
+		coalescingDelays.put(roomID, Math.max(0, delayMillis));
+	}
+
+	/**
+	 * Sets the port of the plain-text endpoint of the metrics of the server
+	 * (see ServerMetrics), which is started by start() on the loopback
+	 * address. The metrics are always recorded, and registered with the
+	 * platform MBean server; by default there is no plain-text endpoint.
+	 * 
+	 * @param port
+	 *            the port of the endpoint (0 for any free port, -1 for none)
+	 */
+	public void setMetricsPort(int port) {
+		metricsPort = port;
+	}
+
+	/**
+	 * Sets the maximum number of client connections (in the lobby or in a
+	 * room). A client connecting when the server has this many connections
+	 * receives a FULL message, and its connection is closed.
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of connections
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = Math.max(1, maxConnections);
+	}
+
+	/**
+	 * Sets the maximum number of rooms. A client joining a new room when the
+	 * server has this many rooms receives a FULL message, and its connection
+	 * is closed.
+	 * 
+	 * @param maxRooms
+	 *            the maximum number of rooms
+	 */
+	public void setMaxRooms(int maxRooms) {
+		this.maxRooms = Math.max(1, maxRooms);
+	}
+
+	/**
+	 * Sets the maximum time a client may stay in the lobby, i.e. connected
+	 * without having joined a room (since it connected, or since it was
+	 * turned away from a full room). Its connection is then closed, so that
+	 * idle connections cannot hold the resources of the server.
+	 * 
+	 * @param timeoutMillis
+	 *            the time in milliseconds (0 for no limit)
+	 */
+	public void setLobbyTimeout(long timeoutMillis) {
+		this.lobbyTimeout = Math.max(0, timeoutMillis);
+	}
+
+	/**
+	 * Returns the metrics of the server.
+	 * 
+	 * @return the metrics
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Creates (but does not start) a thread for a client handler.
+	 * 
+	 * @param handler
+	 *            the client handler to be run by the thread
+	 * @return a virtual thread if enabled by setVirtualThreads(); a platform
+	 *         thread otherwise
+	 */
+	private Thread newHandlerThread(Runnable handler) {
+		if (virtualThreadFactory != null) {
+			return virtualThreadFactory.newThread(handler);
+		}
+		return new Thread(handler);
+	}
+
 	/**
 	 * Starts the server at the specified port
 	 * 
@@ -104,16 +434,23 @@ public class CardGameServer {
 	 *            the specified port at which the server starts
 	 */
 	public void start(int port) {
+		if (nioMode) {
+			startNio(port);
+			return;
+		}
 		// start the server
 		try {
 			// creates a ServerScoket
-			ServerSocket serverSocket = new ServerSocket(port);
+			ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
 			println("Starts up the server at localhost:"
 					+ serverSocket.getLocalPort());
+			startMetrics(serverSocket.getLocalPort());
 			serverUp = true;
 			while (serverUp) {
 				// waits for clients to connect
 				Socket clientSocket = serverSocket.accept();
+				// the server batches its writes at flush points itself
+				clientSocket.setTcpNoDelay(true);
 				addConnection(clientSocket);
 			} // while
 			serverSocket.close();
@@ -123,6 +460,135 @@ public class CardGameServer {
 		}
 	} // start
 
+	/**
+	 * Starts the server at the specified port with the NIO transport.
+	 * 
+	 * @param port
+	 *            the specified port at which the server starts
+	 */
+	private void startNio(int port) {
+		int numOfDecoders = Math.max(2, Runtime.getRuntime().availableProcessors());
+		nioDecoders = Executors.newFixedThreadPool(numOfDecoders);
+		nioStreamReaders = Executors.newCachedThreadPool();
+		try {
+			// creates a non-blocking ServerSocketChannel
+			Selector selector = Selector.open();
+			ServerSocketChannel serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+			println("Starts up the server at localhost:"
+					+ serverChannel.socket().getLocalPort() + " (NIO)");
+			startMetrics(serverChannel.socket().getLocalPort());
+			serverUp = true;
+			while (serverUp) {
+				// waits for connections, incoming bytes and writable sockets
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						SocketChannel channel = serverChannel.accept();
+						if (channel != null) {
+							channel.configureBlocking(false);
+							channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+							SelectionKey clientKey = channel.register(selector, SelectionKey.OP_READ);
+							NioConnection connection = new NioConnection(channel, clientKey,
+									NioConnection.DEFAULT_MAX_QUEUED_BYTES, NIO_READ_TIMEOUT);
+							clientKey.attach(connection);
+							addNioConnection(connection);
+						}
+						continue;
+					}
+					NioConnection connection = (NioConnection) key.attachment();
+					NioClientHandler handler = nioHandlers.get(connection.getSocket());
+					try {
+						if (key.isReadable()) {
+							int n = connection.readFromChannel();
+							if (n > 0) {
+								metrics.bytesReceived(n);
+								if (handler != null) {
+									// only complete messages go to the decoders
+									connection.takeMessages(handler.messages);
+								}
+							}
+							if (n < 0) {
+								// the client closed the connection
+								connection.close();
+							}
+							if (n != 0 && handler != null) {
+								handler.schedule();
+							}
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.writeToChannel();
+						}
+					} catch (IOException ex) {
+						connection.close();
+						if (handler != null) {
+							handler.schedule();
+						}
+					}
+				} // while
+			} // while
+			serverChannel.close();
+			selector.close();
+		} catch (Exception ex) {
+			println("Error in starting up the server at localhost:" + port);
+			if (!silentMode) ex.printStackTrace();
+		} finally {
+			nioDecoders.shutdown();
+			nioStreamReaders.shutdown();
+		}
+	} // startNio
+
+	/**
+	 * Registers the metrics of the server with the platform MBean server, and
+	 * starts their plain-text endpoint if its port has been set.
+	 * 
+	 * @param serverPort
+	 *            the port of the server
+	 */
+	private void startMetrics(int serverPort) {
+		try {
+			metrics.registerMBean(serverPort);
+		} catch (JMException ex) {
+			println("Error in registering the metrics MBean: " + ex.getMessage());
+			if (!silentMode) ex.printStackTrace();
+		}
+		if (metricsPort >= 0) {
+			try {
+				metrics.startEndpoint(metricsPort);
+				println("Serves the metrics at http://127.0.0.1:"
+						+ metrics.getEndpointPort() + "/metrics");
+			} catch (IOException ex) {
+				println("Error in starting the metrics endpoint at localhost:" + metricsPort);
+				if (!silentMode) ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Handles a message received from the specified client, and records the
+	 * time it takes in the metrics of the server.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the specified client
+	 * @param message
+	 *            the message received from the specified client
+	 */
+	private void receiveMessage(Socket clientSocket, CardGameMessage message) {
+		println("Message received from "
+				+ clientSocket.getRemoteSocketAddress());
+		long start = System.nanoTime();
+		parseMessage(clientSocket, message);
+		metrics.messageReceived(message.getType(), System.nanoTime() - start);
+	}
+
 	/**
 	 * Parses the incoming message from the specified client.
 	 * 
@@ -131,120 +597,379 @@ public class CardGameServer {
 	 * @param message
 	 *            the message received from the specified client
 	 */
-	private synchronized void parseMessage(Socket clientSocket,
+	private void parseMessage(Socket clientSocket,
 			CardGameMessage message) {
-		// updates the playerID
-		for (int i = 0; i < maxNumOfPlayers; i++) {
-			if (clientSockets[i] == clientSocket) {
-				message.setPlayerID(i);
-				break;
-			}
+		// a JOIN message moves the client from the lobby into a room
+		if (message.getType() == CardGameMessage.JOIN) {
+			joinRoom(clientSocket, message.getPlayerID(),
+					(String) message.getData());
+			return;
 		}
 
-		// parses the message based on it type
-		switch (message.getType()) {
-		case CardGameMessage.JOIN:
-			// adds a player to the game
-			addPlayer(clientSocket, (String) message.getData());
-			break;
-		case CardGameMessage.READY:
-			// marks the specified player as ready for a new game
-			setReadyState(clientSocket);
-			break;
-		case CardGameMessage.MOVE:
-			println("Broadcasts a \"MOVE\" message from "
+		// all the other messages are handled by the room of the client
+		Room room = clientRooms.get(clientSocket);
+		if (room == null) {
+			println("Ignores a message from a client not in any room at "
 					+ clientSocket.getRemoteSocketAddress());
-			// broadcast the MOVE message to all clients
-			broadcastMessage(message);
-			break;
-		case CardGameMessage.MSG:
-			println("Broadcasts a user message from "
-					+ clientSocket.getRemoteSocketAddress());
-			// broadcast the user message to all clients
-			broadcastUserMessage(clientSocket, (String) message.getData());
-			break;
-		default:
-			println("Wrong message type: " + message.getType());
-			// invalid message
-			break;
+			return;
+		}
+		room.lock.lock();
+		try {
+			// updates the playerID
+			int playerID = room.indexOf(clientSocket);
+			if (playerID < 0) {
+				// the client has left the room in the meantime
+				return;
+			}
+			message.setPlayerID(playerID);
+
+			// parses the message based on it type
+			switch (message.getType()) {
+			case CardGameMessage.READY:
+				// marks the specified player as ready for a new game
+				setReadyState(room, clientSocket);
+				break;
+			case CardGameMessage.MOVE:
+				if (acceptMove(room.roomID, message.getPlayerID(), message.getData())) {
+					println("Broadcasts a \"MOVE\" message from "
+							+ clientSocket.getRemoteSocketAddress());
+					// broadcast the accepted MOVE message to the room
+					broadcastMessage(room, message);
+				} else {
+					println("Rejects a \"MOVE\" message from "
+							+ clientSocket.getRemoteSocketAddress());
+					// tells only the sender that its move is rejected
+					sendMessage(clientSocket, new CardGameMessage(
+							CardGameMessage.INVALID_MOVE, message.getPlayerID(),
+							message.getData()));
+				}
+				break;
+			case CardGameMessage.MSG:
+				println("Broadcasts a user message from "
+						+ clientSocket.getRemoteSocketAddress());
+				// broadcast the user message to the room
+				broadcastUserMessage(room, clientSocket, (String) message.getData());
+				break;
+			default:
+				println("Wrong message type: " + message.getType());
+				// invalid message
+				break;
+			}
+			flushRoom(room);
+		} finally {
+			room.lock.unlock();
 		}
 	} // parseMessage
 
 	/**
-	 * Broadcasts the specified message to all clients.
+	 * Broadcasts the specified message to all clients in the specified room.
+	 * The message is encoded once and the same bytes are written to every
+	 * client of the binary format (see EncodedMessage), and then buffered
+	 * until the next flush point of the room.
 	 * 
+	 * @param room
+	 *            the room to which the message is broadcast
 	 * @param message
-	 *            the specified message to be broadcast to all clients
+	 *            the specified message to be broadcast to the clients
 	 */
-	private synchronized void broadcastMessage(CardGameMessage message) {
-		if (numOfPlayers > 0) {
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] != null && clientOutputStreams[i] != null) {
-					try {
-						clientOutputStreams[i].writeObject(message);
-					} catch (Exception ex) {
-						println("Error in broadcasting a message to the client at "
-								+ clientSockets[i].getRemoteSocketAddress());
-						if (!silentMode) ex.printStackTrace();
+	private void broadcastMessage(Room room, CardGameMessage message) {
+		room.lock.lock();
+		try {
+			if (room.numOfPlayers > 0) {
+				long start = System.nanoTime();
+				EncodedMessage encoded = new EncodedMessage(message, room.numOfPlayers);
+				for (int i = 0; i < maxNumOfPlayers; i++) {
+					if (room.clientSockets[i] != null && room.clientOutputStreams[i] != null) {
+						try {
+							MessageWriter writer = room.clientOutputStreams[i];
+							long bytes = writer.getBytesWritten();
+							writer.writeEncoded(encoded);
+							metrics.messageSent(message.getType(), writer.getBytesWritten() - bytes);
+						} catch (Exception ex) {
+							println("Error in broadcasting a message to the client at "
+									+ room.clientSockets[i].getRemoteSocketAddress());
+							if (!silentMode) ex.printStackTrace();
+							closeNioConnection(room.clientSockets[i]);
+						}
 					}
 				}
+				metrics.recordBroadcast(System.nanoTime() - start);
 			}
+		} finally {
+			room.lock.unlock();
 		}
 	} // broadcastMessage
 
 	/**
-	 * Adds a new socket connection to the server
+	 * Sends the specified message to a single client. The caller must hold
+	 * the lock of the room of the client, if any, so that the message is not
+	 * interleaved with a broadcast; the message is then buffered until the
+	 * next flush point of the room. A message to a client in the lobby is
+	 * sent immediately.
 	 * 
 	 * @param clientSocket
-	 *            the socket connection to be added to the server
+	 *            the socket connection to the client
+	 * @param message
+	 *            the specified message to be sent to the client
+	 */
+	private void sendMessage(Socket clientSocket, CardGameMessage message) {
+		MessageWriter writer = clientOutputStreams.get(clientSocket);
+		if (writer != null) {
+			try {
+				long bytes = writer.getBytesWritten();
+				writer.writeMessage(message);
+				metrics.messageSent(message.getType(), writer.getBytesWritten() - bytes);
+				if (!clientRooms.containsKey(clientSocket)) {
+					writer.flush();
+				}
+			} catch (Exception ex) {
+				println("Error in sending a message to the client at "
+						+ clientSocket.getRemoteSocketAddress());
+				if (!silentMode) ex.printStackTrace();
+				closeNioConnection(clientSocket);
+			}
+		}
+	} // sendMessage
+
+	/**
+	 * Marks a flush point of the specified room: sends the messages buffered
+	 * for its clients, either now or after the coalescing delay of the room.
+	 * The caller must hold the lock of the room.
+	 * 
+	 * @param room
+	 *            the room whose messages are flushed
+	 */
+	private void flushRoom(final Room room) {
+		Long delay = coalescingDelays.get(room.roomID);
+		long delayMillis = (delay != null) ? delay : defaultCoalescingDelay;
+		if (delayMillis == 0) {
+			flushNow(room);
+		} else if (!room.flushScheduled) {
+			room.flushScheduled = true;
+			flushScheduler.schedule(new Runnable() {
+				public void run() {
+					flushNow(room);
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Sends the messages buffered for the clients of the specified room.
+	 * 
+	 * @param room
+	 *            the room whose messages are flushed
 	 */
-	private synchronized void addConnection(Socket clientSocket) {
-		// adds this connection to the server if the server is not full
-		if (numOfPlayers < maxNumOfPlayers) {
-			// locates the first empty slot for the new connection
+	private void flushNow(Room room) {
+		room.lock.lock();
+		try {
+			room.flushScheduled = false;
+			long start = System.nanoTime();
 			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == null) {
+				flushClient(room, i);
+			}
+			metrics.recordFlush(System.nanoTime() - start);
+		} finally {
+			room.lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends the messages buffered for the client at the specified seat of a
+	 * room. The caller must hold the lock of the room.
+	 * 
+	 * @param room
+	 *            the room of the client
+	 * @param i
+	 *            the seat of the client
+	 */
+	private void flushClient(Room room, int i) {
+		if (room.clientSockets[i] != null && room.clientOutputStreams[i] != null) {
+			try {
+				room.clientOutputStreams[i].flush();
+			} catch (Exception ex) {
+				println("Error in sending messages to the client at "
+						+ room.clientSockets[i].getRemoteSocketAddress());
+				if (!silentMode) ex.printStackTrace();
+				closeNioConnection(room.clientSockets[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds a new connection to the lobby of the server. The client stays in
+	 * the lobby until it joins a room with a JOIN message.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to be added to the server
+	 */
+	private void addConnection(Socket clientSocket) {
+		if (connections.size() >= maxConnections) {
+			// Max. no. of connections reached
+			println("Server is full: cannot establish a connection with a client at "
+					+ clientSocket.getRemoteSocketAddress());
+			rejectConnection(clientSocket);
+			return;
+		}
+		try {
+			println("Establishes a connection with a client at "
+					+ clientSocket.getRemoteSocketAddress());
+			connections.add(clientSocket);
+			metrics.connectionAccepted();
+			scheduleLobbyTimeout(clientSocket);
+
+			// creates a thread for receiving messages from this client (with
+			// the NIO transport, the selector thread schedules its decoder
+			// when bytes arrive)
+			if (!nioHandlers.containsKey(clientSocket)) {
+				Thread t = newHandlerThread(new ClientHandler(clientSocket));
+				t.start();
+			}
+		} catch (Exception ex) {
+			println("Error in establishing a connection with a client at "
+					+ clientSocket.getRemoteSocketAddress());
+			if (!silentMode) ex.printStackTrace();
+			removeConnection(clientSocket);
+		}
+	} // addConnection
+
+	/**
+	 * Sends a FULL message to a client which cannot be added to the server,
+	 * in the Java serialization format (which the reader of every client
+	 * detects, as the wire format of the client is not known yet), and closes
+	 * its connection after 1000 milliseconds.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the client
+	 */
+	private void rejectConnection(final Socket clientSocket) {
+		// the messages of the client are not read
+		final NioClientHandler handler = nioHandlers.remove(clientSocket);
+		try {
+			MessageWriter writer = CardGameCodec.newWriter((handler != null)
+					? handler.connection.getOutputStream()
+					: new BufferedOutputStream(clientSocket.getOutputStream()), false);
+			writer.writeMessage(new CardGameMessage(CardGameMessage.FULL, -1, null));
+			writer.flush();
+		} catch (Exception ex) {
+			println("Error in sending a FULL message to the client at "
+					+ clientSocket.getRemoteSocketAddress());
+			if (!silentMode) ex.printStackTrace();
+		}
+		closeLater(clientSocket, handler);
+	}
+
+	/**
+	 * Closes the connection of a client after 1000 milliseconds, which gives
+	 * the client the time to read the last message sent to it.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the client
+	 * @param handler
+	 *            the NIO handler of a connection which has not been added to
+	 *            the server (null for any other connection)
+	 */
+	private void closeLater(final Socket clientSocket, final NioClientHandler handler) {
+		flushScheduler.schedule(new Runnable() {
+			public void run() {
+				if (handler != null) {
+					handler.connection.close();
+				} else if (connections.contains(clientSocket)) {
+					removeConnection(clientSocket);
+				} else {
 					try {
-						// creates an ObjectOutputStream for this client socket
-						ObjectOutputStream oostream = new ObjectOutputStream(
-								clientSocket.getOutputStream());
-
-						clientSockets[i] = clientSocket;
-						clientOutputStreams[i] = oostream;
-						clientNames[i] = null;
-						clientReadyStates[i] = false;
-						numOfPlayers++;
-						println("Establishes a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
-
-						// creates a thread for receiving messages from this
-						// client
-						Thread t = new Thread(new ClientHandler(clientSocket));
-						t.start();
-
-						// sends the player list to the new player
-						oostream.writeObject(new CardGameMessage(
-								CardGameMessage.PLAYER_LIST, i, clientNames));
+						clientSocket.close();
 					} catch (Exception ex) {
-						println("Error in establishing a connection with a client at "
-								+ clientSocket.getRemoteSocketAddress());
-						if (!silentMode) ex.printStackTrace();
+						// already closed
 					}
-					break;
 				}
-			} // for
-		} else {
-			// Max. no. of players reached
-			println("Server is full: cannot establish a connection with a client at "
-					+ clientSocket.getRemoteSocketAddress());
+			}
+		}, 1000, TimeUnit.MILLISECONDS);
+	}
 
-			// creates a thread for sending a FULL message to this client, waits
-			// for 1000 milliseconds and closes the socket
-			Thread t = new Thread(new ClientHandler2(clientSocket));
-			t.start();
+	/**
+	 * Closes the connection of a client if it is still in the lobby after the
+	 * lobby timeout (see setLobbyTimeout()).
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the client
+	 */
+	private void scheduleLobbyTimeout(final Socket clientSocket) {
+		final long timeout = lobbyTimeout;
+		if (timeout == 0) {
+			return;
 		}
+		flushScheduler.schedule(new Runnable() {
+			public void run() {
+				if (connections.contains(clientSocket) && !clientRooms.containsKey(clientSocket)) {
+					println("Closes the connection of a client which has not joined a room within "
+							+ timeout + " ms at " + clientSocket.getRemoteSocketAddress());
+					removeConnection(clientSocket);
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+	}
 
-	} // addConnection
+	/**
+	 * Creates the message writer of a client, in the same wire format as the
+	 * messages received from the client.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the client
+	 * @param binary
+	 *            true for the binary format; false for Java serialization
+	 * @throws IOException
+	 *             if an I/O error occurs when creating the writer
+	 */
+	private void openWriter(Socket clientSocket, boolean binary) throws IOException {
+		clientOutputStreams.put(clientSocket,
+				CardGameCodec.newWriter(getOutputStream(clientSocket), binary));
+	}
+
+	/**
+	 * Adds a new NIO connection to the server.
+	 * 
+	 * @param connection
+	 *            the connection to be added to the server
+	 */
+	private void addNioConnection(NioConnection connection) {
+		nioHandlers.put(connection.getSocket(), new NioClientHandler(connection));
+		addConnection(connection.getSocket());
+	}
+
+	/**
+	 * Closes the NIO connection of the specified socket (if any), e.g. when
+	 * its client is too slow to keep up with the messages. The connection is
+	 * then removed by its decoder, outside of the current broadcast.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to be closed
+	 */
+	private void closeNioConnection(Socket clientSocket) {
+		NioClientHandler handler = nioHandlers.get(clientSocket);
+		if (handler != null) {
+			handler.connection.close();
+			handler.schedule();
+		}
+	}
+
+	/**
+	 * Returns the OutputStream of the specified socket connection, which
+	 * sends the bytes written to it when flushed.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to a client
+	 * @return the OutputStream for sending bytes to the client
+	 * @throws IOException
+	 *             if an I/O error occurs when creating the output stream
+	 */
+	private OutputStream getOutputStream(Socket clientSocket) throws IOException {
+		NioClientHandler handler = nioHandlers.get(clientSocket);
+		if (handler != null) {
+			return handler.connection.getOutputStream();
+		}
+		return new BufferedOutputStream(clientSocket.getOutputStream());
+	}
 
 	/**
 	 * Removes a connection from the server (possibly due to connection loss).
@@ -252,108 +977,311 @@ public class CardGameServer {
 	 * @param clientSocket
 	 *            the socket connection being removed from the server
 	 */
-	private synchronized void removeConnection(Socket clientSocket) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					String name = clientNames[i];
+	private void removeConnection(Socket clientSocket) {
+		leaveRoom(clientSocket);
+		connections.remove(clientSocket);
+		clientOutputStreams.remove(clientSocket);
+		NioClientHandler handler = nioHandlers.remove(clientSocket);
+		if (handler != null) {
+			handler.connection.close();
+		} else {
+			try {
+				clientSocket.close();
+			} catch (Exception ex) {
+				// already closed
+			}
+		}
+	} // removeConnection
 
-					clientSockets[i] = null;
-					clientOutputStreams[i] = null;
-					clientNames[i] = null;
-					clientReadyStates[i] = false;
-					numOfPlayers--;
+	/**
+	 * Adds a player to a room, creating the room if it does not exist. If the
+	 * room is full, a FULL message is sent to the client, which stays in the
+	 * lobby and may try another room. If the room does not exist and the
+	 * server already has the maximum number of rooms, a FULL message is sent
+	 * to the client and its connection is closed. A client which is already in
+	 * another room leaves that room first.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the player who is joining the room
+	 * @param roomID
+	 *            the ID of the room (a negative value selects the default
+	 *            room 0)
+	 * @param name
+	 *            the name of the player who is joining the room
+	 */
+	private void joinRoom(Socket clientSocket, int roomID, String name) {
+		if (roomID < 0) {
+			roomID = DEFAULT_ROOM_ID;
+		}
+		Room current = clientRooms.get(clientSocket);
+		if (current != null) {
+			if (current.roomID == roomID) {
+				// already in this room: updates the name of the player
+				current.lock.lock();
+				try {
+					addPlayer(current, clientSocket, name);
+					flushRoom(current);
+				} finally {
+					current.lock.unlock();
+				}
+				return;
+			}
+			leaveRoom(clientSocket);
+		}
 
-					println(name + " (" + clientSocket.getRemoteSocketAddress()
-							+ ") leaves the game.");
+		while (true) {
+			Room room = rooms.get(roomID);
+			if (room == null) {
+				room = rooms.computeIfAbsent(roomID, roomFactory);
+				if (room == null) {
+					// Max. no. of rooms reached
+					println("Server is full: cannot create room " + roomID + " for the client at "
+							+ clientSocket.getRemoteSocketAddress());
+					sendMessage(clientSocket, new CardGameMessage(
+							CardGameMessage.FULL, -1, null));
+					closeLater(clientSocket, null);
+					return;
+				}
+			}
+			room.lock.lock();
+			try {
+				if (room.closed) {
+					// the room was emptied and removed in the meantime
+					continue;
+				}
+				// locates the first empty seat for the new player
+				int i = room.indexOf(null);
+				if (i < 0) {
+					// Max. no. of players reached
+					println("Room " + roomID + " is full: cannot add the client at "
+							+ clientSocket.getRemoteSocketAddress());
+					sendMessage(clientSocket, new CardGameMessage(
+							CardGameMessage.FULL, -1, null));
+					scheduleLobbyTimeout(clientSocket);
+					return;
+				}
+				room.clientSockets[i] = clientSocket;
+				room.clientOutputStreams[i] = clientOutputStreams.get(clientSocket);
+				room.clientNames[i] = null;
+				room.clientReadyStates[i] = false;
+				room.numOfPlayers++;
+				clientRooms.put(clientSocket, room);
 
-					String remoteAddress = clientSocket
-							.getRemoteSocketAddress().toString();
+				// sends (a copy of) the player list of the room to the new
+				// player, as the array itself keeps changing
+				sendMessage(clientSocket, new CardGameMessage(
+						CardGameMessage.PLAYER_LIST, i, room.clientNames.clone()));
+				addPlayer(room, clientSocket, name);
+				flushRoom(room);
+				return;
+			} finally {
+				room.lock.unlock();
+			}
+		}
+	} // joinRoom
 
-					// broadcasts a message about the leaving of this player
-					broadcastMessage(new CardGameMessage(CardGameMessage.QUIT,
-							i, remoteAddress));
-					break;
-				}
+	/**
+	 * Counts a new room, unless the server already has the maximum number of
+	 * rooms.
+	 * 
+	 * @return true if the room can be created; false otherwise
+	 */
+	private boolean reserveRoom() {
+		while (true) {
+			int n = numOfRoomSlots.get();
+			if (n >= maxRooms) {
+				return false;
+			}
+			if (numOfRoomSlots.compareAndSet(n, n + 1)) {
+				return true;
 			}
 		}
-	} // removeConnection
+	}
+
+	/**
+	 * Removes a player from his room (if any). The current game of the room
+	 * stops, and the room is removed from the server when it becomes empty.
+	 * 
+	 * @param clientSocket
+	 *            the socket connection to the player who is leaving
+	 */
+	private void leaveRoom(Socket clientSocket) {
+		Room room = clientRooms.get(clientSocket);
+		if (room == null) {
+			return;
+		}
+		room.lock.lock();
+		try {
+			// locates the client socket in the room
+			int i = room.indexOf(clientSocket);
+			if (i < 0) {
+				return;
+			}
+			String name = room.clientNames[i];
+
+			// sends what is still buffered for this client (e.g. when it moves
+			// to another room)
+			flushClient(room, i);
+			room.clientSockets[i] = null;
+			room.clientOutputStreams[i] = null;
+			room.clientNames[i] = null;
+			room.clientReadyStates[i] = false;
+			room.numOfPlayers--;
+			clientRooms.remove(clientSocket);
+
+			println(name + " (" + clientSocket.getRemoteSocketAddress()
+					+ ") leaves room " + room.roomID + ".");
+
+			String remoteAddress = clientSocket
+					.getRemoteSocketAddress().toString();
+
+			// the current game cannot go on without this player
+			room.gameInProgress = false;
+			gameStopped(room.roomID);
+
+			if (room.numOfPlayers == 0) {
+				// nobody is left to be told; removes the empty room
+				room.closed = true;
+				rooms.remove(room.roomID, room);
+				numOfRoomSlots.decrementAndGet();
+			} else {
+				// broadcasts a message about the leaving of this player
+				broadcastMessage(room, new CardGameMessage(CardGameMessage.QUIT,
+						i, remoteAddress));
+				flushRoom(room);
+			}
+		} finally {
+			room.lock.unlock();
+		}
+	} // leaveRoom
 
 	/**
-	 * adds a player to the game.
+	 * Sets the name of a player in a room and tells the room about it.
 	 * 
+	 * @param room
+	 *            the room of the player
 	 * @param clientSocket
 	 *            the socket connection to the player who is joining the game
 	 * @param name
 	 *            the name of the player who is joining the game
 	 */
-	private synchronized void addPlayer(Socket clientSocket, String name) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					// updates the name of the new player
-					clientNames[i] = name;
+	private void addPlayer(Room room, Socket clientSocket, String name) {
+		room.lock.lock();
+		try {
+			// locates the client socket in the room
+			int i = room.indexOf(clientSocket);
+			if (i >= 0) {
+				// updates the name of the new player
+				room.clientNames[i] = name;
 
-					println(name + " (" + clientSocket.getRemoteSocketAddress()
-							+ ") joins the game.");
+				println(name + " (" + clientSocket.getRemoteSocketAddress()
+						+ ") joins room " + room.roomID + ".");
 
-					// broadcasts a message about this player joining the game
-					broadcastMessage(new CardGameMessage(CardGameMessage.JOIN,
-							i, name));
-					break;
-				}
+				// broadcasts a message about this player joining the game
+				broadcastMessage(room, new CardGameMessage(CardGameMessage.JOIN,
+						i, name));
 			}
+		} finally {
+			room.lock.unlock();
 		}
 	} // addPlayer
 
 	/**
 	 * Marks the specified player as ready for a new game.
 	 * 
+	 * @param room
+	 *            the room of the player
 	 * @param clientSocket
 	 *            the socket connection to the player who becomes ready for a
 	 *            new game
 	 */
-	private synchronized void setReadyState(Socket clientSocket) {
-		if (numOfPlayers > 0) {
-			// locates the client socket in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					clientReadyStates[i] = true;
-					println(clientNames[i] + " ("
-							+ clientSocket.getRemoteSocketAddress()
-							+ " ) is ready for the next game.");
-					broadcastMessage(new CardGameMessage(CardGameMessage.READY,
-							i, null));
-					break;
-				}
+	private void setReadyState(Room room, Socket clientSocket) {
+		room.lock.lock();
+		try {
+			// locates the client socket in the room
+			int i = room.indexOf(clientSocket);
+			if (i >= 0) {
+				room.clientReadyStates[i] = true;
+				println(room.clientNames[i] + " ("
+						+ clientSocket.getRemoteSocketAddress()
+						+ " ) is ready for the next game.");
+				broadcastMessage(room, new CardGameMessage(CardGameMessage.READY,
+						i, null));
 			}
-		}
 
-		// checks if all players are ready
-		if (numOfPlayers == maxNumOfPlayers) {
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientReadyStates[i] == false) {
-					// returns if any of the players is not ready
-					return;
+			// checks if all players are ready
+			if (room.numOfPlayers == maxNumOfPlayers) {
+				for (i = 0; i < maxNumOfPlayers; i++) {
+					if (room.clientReadyStates[i] == false) {
+						// returns if any of the players is not ready
+						return;
+					}
 				}
-			}
 
-			// resets the ready states of all the players for the next game
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				clientReadyStates[i] = false;
-			}
+				// resets the ready states of all the players for the next game
+				for (i = 0; i < maxNumOfPlayers; i++) {
+					room.clientReadyStates[i] = false;
+				}
 
-			// creates a new deck, shuffles the deck, and starts a new game
-			Deck deck = createDeck();
-			deck.shuffle();
-			println("All players are ready. Game starts.");
-			broadcastMessage(new CardGameMessage(CardGameMessage.START, -1,
-					deck));
+				// creates a new deck, shuffles the deck, and starts a new game
+				Deck deck = createDeck();
+				RandomGenerator random = this.random;
+				deck.shuffle((random != null) ? random : Deck.getThreadRandom());
+				println("All players in room " + room.roomID
+						+ " are ready. Game starts.");
+				room.gameInProgress = true;
+				metrics.gameStarted();
+				gameStarted(room.roomID, deck);
+				broadcastMessage(room, new CardGameMessage(CardGameMessage.START, -1,
+						deck));
+			}
+		} finally {
+			room.lock.unlock();
 		}
 	}
 
+	/**
+	 * Called when all players in a room are ready and a new game starts with
+	 * the specified deck. Does nothing by default; overrides this method to
+	 * keep the state of the game on the server. The calls for a room are
+	 * serialized, but calls for different rooms may run concurrently.
+	 * 
+	 * @param roomID
+	 *            the ID of the room
+	 * @param deck
+	 *            the shuffled deck of the new game
+	 */
+	protected void gameStarted(int roomID, Deck deck) {
+	}
+
+	/**
+	 * Called when a player leaves a room and its current game stops. Does
+	 * nothing by default.
+	 * 
+	 * @param roomID
+	 *            the ID of the room
+	 */
+	protected void gameStopped(int roomID) {
+	}
+
+	/**
+	 * Checks a move received from a client before it is broadcast to its
+	 * room. Accepts every move by default (i.e. the clients check the moves);
+	 * overrides this method to check and play the move on the server.
+	 * 
+	 * @param roomID
+	 *            the ID of the room of the player
+	 * @param playerID
+	 *            the playerID of the player who makes the move
+	 * @param data
+	 *            the data of the MOVE message
+	 * @return true if the move should be broadcast to the room; false if it
+	 *         should be rejected
+	 */
+	protected boolean acceptMove(int roomID, int playerID, Object data) {
+		return true;
+	}
+
 	/**
 	 * Creates and returns an instance of the Deck class. Overrides this method
 	 * if a different type of deck is needed.
@@ -364,30 +1292,122 @@ public class CardGameServer {
 		return new Deck();
 	}
 
-	private synchronized void broadcastUserMessage(Socket clientSocket,
+	/**
+	 * Returns the number of rooms with at least one player.
+	 * 
+	 * @return the number of rooms
+	 */
+	public int getNumOfRooms() {
+		return rooms.size();
+	}
+
+	/**
+	 * Returns the number of open client connections (in the lobby or in a
+	 * room).
+	 * 
+	 * @return the number of connections
+	 */
+	public int getNumOfConnections() {
+		return connections.size();
+	}
+
+	/**
+	 * Returns the number of games in progress. As the end of a game is only
+	 * known to a server which plays the moves, this is the number of rooms
+	 * whose last game has started and has not been stopped by a player
+	 * leaving; such a server overrides this method.
+	 * 
+	 * @return the number of games
+	 */
+	public int getNumOfGames() {
+		int numOfGames = 0;
+		for (Room room : rooms.values()) {
+			if (room.gameInProgress) {
+				numOfGames++;
+			}
+		}
+		return numOfGames;
+	}
+
+	private void broadcastUserMessage(Room room, Socket clientSocket,
 			String msg) {
-		if (numOfPlayers > 0) {
-			// locates the client in the array
-			for (int i = 0; i < maxNumOfPlayers; i++) {
-				if (clientSockets[i] == clientSocket) {
-					String longMsg = clientNames[i] + " ("
-							+ clientSocket.getRemoteSocketAddress() + "): "
-							+ msg;
-					broadcastMessage(new CardGameMessage(CardGameMessage.MSG,
-							i, longMsg));
-					break;
-				}
+		room.lock.lock();
+		try {
+			// locates the client in the room
+			int i = room.indexOf(clientSocket);
+			if (i >= 0) {
+				String longMsg = room.clientNames[i] + " ("
+						+ clientSocket.getRemoteSocketAddress() + "): "
+						+ msg;
+				broadcastMessage(room, new CardGameMessage(CardGameMessage.MSG,
+						i, longMsg));
+			}
+		} finally {
+			room.lock.unlock();
+		}
+	}
+
+	/**
+	 * Prints the number of bytes written to each connection, and the number
+	 * of objects (and their serialized bytes) which each connection retains
+	 * to encode back-references.
+	 */
+	private void printConnectionStats() {
+		long totalBytes = 0, totalRetainedBytes = 0;
+		int totalRetainedObjects = 0;
+		for (Socket clientSocket : clientOutputStreams.keySet()) {
+			MessageWriter writer = clientOutputStreams.get(clientSocket);
+			if (writer == null) {
+				continue;
 			}
+			Room room = clientRooms.get(clientSocket);
+			println(clientSocket.getRemoteSocketAddress()
+					+ (room == null ? " (lobby)" : " (room " + room.roomID + ")")
+					+ (writer.isBinary() ? " binary" : " serialization")
+					+ ": " + writer.getBytesWritten() + " bytes written, "
+					+ writer.getRetainedObjects() + " objects ("
+					+ writer.getRetainedBytes() + " bytes) retained");
+			totalBytes += writer.getBytesWritten();
+			totalRetainedObjects += writer.getRetainedObjects();
+			totalRetainedBytes += writer.getRetainedBytes();
 		}
+		println(clientOutputStreams.size() + " connections, " + rooms.size()
+				+ " rooms: " + totalBytes + " bytes written, "
+				+ totalRetainedObjects + " objects (" + totalRetainedBytes
+				+ " bytes) retained");
 	}
 
 	/**
-	 * Prints the specified message to the text area.
+	 * Prints the specified message to the log of the server (without waiting
+	 * for it to be written).
 	 * 
 	 * @param msg
 	 */
 	private void println(String msg) {
-		textArea.append(msg + "\n");
+		log.log(msg);
+	}
+
+	/**
+	 * Appends lines of the log to the text area, keeping its last
+	 * MAX_CONSOLE_LINES lines. Called on the event dispatch thread.
+	 * 
+	 * @param lines
+	 *            the lines to be appended
+	 */
+	private void appendToConsole(List<String> lines) {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		textArea.append(text.toString());
+		int excess = textArea.getLineCount() - MAX_CONSOLE_LINES;
+		if (excess > 0) {
+			try {
+				textArea.replaceRange("", 0, textArea.getLineEndOffset(excess - 1));
+			} catch (BadLocationException ex) {
+				textArea.setText("");
+			}
+		}
 		textArea.setCaretPosition(textArea.getDocument().getLength());
 	}
 
@@ -399,7 +1419,7 @@ public class CardGameServer {
 	 */
 	private class ClientHandler implements Runnable {
 		private Socket clientSocket; // socket connection to the client
-		private ObjectInputStream oistream; // ObjectInputStream of the client
+		private MessageReader reader; // reader of the messages of the client
 
 		/**
 		 * Creates and returns an instance of the ClientHandler class.
@@ -409,26 +1429,31 @@ public class CardGameServer {
 		 */
 		public ClientHandler(Socket clientSocket) {
 			this.clientSocket = clientSocket;
+		} // constructor
+
+		// implementation of method from the Runnable interface
+		public void run() {
 			try {
-				// creates an ObjectInputStream and chains it to the InputStream
-				// of the client socket
-				oistream = new ObjectInputStream(clientSocket.getInputStream());
+				// creates a MessageReader and chains it to the InputStream of
+				// the client socket (on this thread, as reading the stream
+				// header blocks until the client sends it), then answers the
+				// client in the same wire format
+				reader = CardGameCodec.newReader(new BufferedInputStream(
+						metrics.countBytesReceived(clientSocket.getInputStream())));
+				openWriter(clientSocket, reader.isBinary());
 			} catch (Exception ex) {
-				println("Error in creating an ObjectInputStream for the client at "
+				println("Error in creating a MessageReader for the client at "
 						+ clientSocket.getRemoteSocketAddress());
 				if (!silentMode) ex.printStackTrace();
+				removeConnection(clientSocket);
+				return;
 			}
-		} // constructor
 
-		// implementation of method from the Runnable interface
-		public void run() {
 			CardGameMessage message;
 			try {
 				// waits for messages from the client
-				while ((message = (CardGameMessage) oistream.readObject()) != null) {
-					println("Message received from "
-							+ clientSocket.getRemoteSocketAddress());
-					parseMessage(clientSocket, message);
+				while ((message = (CardGameMessage) reader.readMessage()) != null) {
+					receiveMessage(clientSocket, message);
 				} // close while
 			} catch (Exception ex) {
 				println("Error in receiving messages from the client at "
@@ -440,56 +1465,173 @@ public class CardGameServer {
 		} // run
 	} // ClientHandler
 
-	private class ClientHandler2 implements Runnable {
-		private Socket clientSocket; // socket connection to the client
+	/**
+	 * This inner class is used for decoding the messages received by the NIO
+	 * transport from a client. It is scheduled whenever messages arrive: on
+	 * the decoder pool for a client of the binary format, whose messages are
+	 * taken by the selector thread once they have arrived completely, or on a
+	 * stream reader thread for a client of the Java serialization format.
+	 * 
+	 * @author Kenneth Wong
+	 *
+	 */
+	private class NioClientHandler implements Runnable {
+		private final NioConnection connection; // connection to the client
+		private final Socket clientSocket; // socket of the connection
+		// complete binary messages taken from the connection, in order
+		private final ConcurrentLinkedQueue<byte[]> messages = new ConcurrentLinkedQueue<byte[]>();
+		private MessageReader reader = null; // created on the first bytes
+		private boolean writerOpened = false;
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		private boolean removed = false;
 
 		/**
-		 * Creates and returns an instance of the ClientHandler2 class.
+		 * Creates and returns an instance of the NioClientHandler class.
 		 * 
-		 * @param clientSocket
-		 *            the socket connection to the client
+		 * @param connection
+		 *            the connection to the client
 		 */
-		public ClientHandler2(Socket clientSocket) {
-			this.clientSocket = clientSocket;
+		public NioClientHandler(NioConnection connection) {
+			this.connection = connection;
+			this.clientSocket = connection.getSocket();
 		} // constructor
 
-		// implementation of method from the Runnable interface
-		public void run() {
-			try {
-				// creates an ObjectOutputStream and chains it to the
-				// OutputStream
-				// of the client socket
-				ObjectOutputStream oostream = new ObjectOutputStream(
-						clientSocket.getOutputStream());
-				// sends a FULL message to the client
-				oostream.writeObject(new CardGameMessage(CardGameMessage.FULL,
-						-1, null));
-				oostream.flush();
-			} catch (Exception ex) {
-				println("Error in sending a FULL message to the client at "
-						+ clientSocket.getRemoteSocketAddress());
-				if (!silentMode) ex.printStackTrace();
+		/**
+		 * Schedules this handler unless it is already scheduled or running.
+		 */
+		public void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				if (connection.isFormatKnown() && !connection.isBinary()) {
+					nioStreamReaders.execute(this);
+				} else {
+					nioDecoders.execute(this);
+				}
 			}
+		}
 
-			// sleeps for 1000 milliseconds before closing the socket
-			try {
-				Thread.sleep(1000);
-			} catch (Exception ex) {
-				println("Error in sleeping before closing the client socket at "
-						+ clientSocket.getRemoteSocketAddress());
-				if (!silentMode) ex.printStackTrace();
+		// Returns true if there are messages to be handled, or the connection
+		// is closed and to be removed
+		private boolean hasWork() {
+			if (removed) {
+				return false;
+			}
+			if (connection.isClosed()) {
+				return true;
 			}
+			if (!connection.isFormatKnown()) {
+				return false;
+			}
+			return connection.isBinary() ? !messages.isEmpty() : (connection.available() > 0);
+		}
 
-			// closes the socket
+		// implementation of method from the Runnable interface
+		public void run() {
 			try {
-				clientSocket.close();
+				if (connection.isBinary()) {
+					if (!writerOpened) {
+						openWriter(clientSocket, true);
+						writerOpened = true;
+					}
+					// decodes the messages which have arrived completely
+					byte[] bytes;
+					while (!removed && (bytes = messages.poll()) != null) {
+						receiveMessage(clientSocket, CardGameCodec.decode(bytes, 0, bytes.length));
+					}
+					if (!removed && connection.isClosed()) {
+						throw new EOFException();
+					}
+				}
+				// reads the messages of a Java serialization stream (which
+				// may wait for the rest of a message)
+				while (!connection.isBinary() && hasWork()) {
+					if (connection.available() == 0) {
+						throw new EOFException();
+					}
+					if (reader == null) {
+						reader = CardGameCodec.newReader(connection.getInputStream());
+						openWriter(clientSocket, reader.isBinary());
+						continue;
+					}
+					CardGameMessage message = (CardGameMessage) reader.readMessage();
+					receiveMessage(clientSocket, message);
+				}
 			} catch (Exception ex) {
-				println("Error in closing the client socket at "
+				println("Error in receiving messages from the client at "
 						+ clientSocket.getRemoteSocketAddress());
 				if (!silentMode) ex.printStackTrace();
+				// possible connection loss, removes the connection
+				removed = true;
+				connection.close();
+				removeConnection(clientSocket);
+			} finally {
+				scheduled.set(false);
+			}
+			// messages may have arrived after the last check
+			if (hasWork()) {
+				schedule();
 			}
 		} // run
-	} // ClientHandler2
+	} // NioClientHandler
+
+	/**
+	 * This inner class is used to model a room (table) of the server, i.e. one
+	 * card game with its own seats and ready states. Each room has its own
+	 * lock, so that the games in different rooms do not wait for each other;
+	 * unlike a synchronized monitor, a virtual thread blocked on the lock (or
+	 * on I/O while holding it) releases its carrier thread.
+	 * 
+	 * @author Kenneth Wong
+	 *
+	 */
+	private class Room {
+		private final int roomID; // ID of this room
+		// Array for holding sockets of the clients
+		private final Socket[] clientSockets = new Socket[maxNumOfPlayers];
+		// Array for holding message writers of the clients
+		private final MessageWriter[] clientOutputStreams = new MessageWriter[maxNumOfPlayers];
+		// Array for holding player names of the clients
+		private final String[] clientNames = new String[maxNumOfPlayers];
+		// Array for holding ready states of the clients
+		private final boolean[] clientReadyStates = new boolean[maxNumOfPlayers];
+		// number of current players
+		private int numOfPlayers = 0;
+		// a boolean indicating if this room has been removed from the server
+		private boolean closed = false;
+		// a boolean indicating if a delayed flush of this room is scheduled
+		private boolean flushScheduled = false;
+		// a boolean indicating if a game has started and not been stopped
+		// (read without the lock by getNumOfGames())
+		private volatile boolean gameInProgress = false;
+		// lock guarding the state of this room
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Creates and returns an instance of the Room class.
+		 * 
+		 * @param roomID
+		 *            the ID of the room
+		 */
+		public Room(int roomID) {
+			this.roomID = roomID;
+		} // constructor
+
+		/**
+		 * Returns the seat of the specified client in this room.
+		 * 
+		 * @param clientSocket
+		 *            the socket connection to the client, or null to locate
+		 *            the first empty seat
+		 * @return the index of the seat, or -1 if not found
+		 */
+		public int indexOf(Socket clientSocket) {
+			for (int i = 0; i < maxNumOfPlayers; i++) {
+				if (clientSockets[i] == clientSocket) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	} // Room
 
 	/**
 	 * This inner class is used for handling the Clear menu
@@ -503,6 +1645,18 @@ public class CardGameServer {
 		}
 	} // ClearMenuItemListener
 
+	/**
+	 * This inner class is used for handling the Connection statistics menu
+	 * 
+	 * @author Kenneth Wong
+	 *
+	 */
+	private class StatsMenuItemListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			printConnectionStats();
+		}
+	} // StatsMenuItemListener
+
 	/**
 	 * This inner class is used for handling the Quit menu
 	 * 
@@ -0,0 +1,290 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DirectColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+
+/**
+ * This class is used to hold the images of the cards (the 52 faces and the
+ * back) and of the avatars of the players. The images are read once and drawn
+ * into an atlas image (one for the cards, one for the avatars), compatible with
+ * the screen if there is one, so that drawing a card is a copy of a region of
+ * the atlas. The atlases are never modified after they have been created.
+ * <p>
+ * The images are read in the background by load(), decoded in parallel, from
+ * the class path (e.g. the jar of the game) or else from the directories
+ * CARD_DIR and AVATAR_DIR of the working directory. The client starts loading
+ * them before asking the name of the player, so they are ready to be drawn
+ * by the time the game starts.
+ *
+ * @author Chan Sze Wing
+ */
+public class CardImages {
+	/**
+	 * The directory of the images of the cards.
+	 */
+	public static final String CARD_DIR = "Card_Image";
+
+	/**
+	 * The directory of the images of the avatars.
+	 */
+	public static final String AVATAR_DIR = "Avatar";
+
+	private static final int BACK = 52; // index of the back of the cards
+	private static final int ATLAS_WIDTH = 1024; // width of the atlas (in pixels)
+	private static final String RANKS = "a23456789tjqk"; // names of the ranks in the files
+	private static final String SUITS = "dchs"; // names of the suits in the files
+
+	private static CompletableFuture<CardImages> loading = null;
+
+	private final Atlas cards; // faces, then the back
+	private final Atlas avatars;
+
+	/**
+	 * Starts reading the images in the background, if it has not been started
+	 * yet, and returns the images when they are ready. The images are decoded
+	 * in parallel, by a thread for each processor.
+	 *
+	 * @return the images of the cards and avatars, once they have been read
+	 */
+	public static synchronized CompletableFuture<CardImages> load() {
+		if (loading == null) {
+			// the images are small, so they are read in memory rather than
+			// through a temporary file
+			ImageIO.setUseCache(false);
+			ExecutorService pool = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						private int numOfThreads = 0;
+
+						public synchronized Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "CardImages-" + numOfThreads++);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
+			final ArrayList<CompletableFuture<BufferedImage>> cardImages =
+					new ArrayList<CompletableFuture<BufferedImage>>();
+			for (int i = 0; i <= BACK; i++) {
+				Card card = (i == BACK) ? null : new Card(i / 13, i % 13);
+				cardImages.add(read(CARD_DIR, getFileName(card), pool));
+			}
+			final ArrayList<CompletableFuture<BufferedImage>> avatarImages =
+					new ArrayList<CompletableFuture<BufferedImage>>();
+			for (int i = 0; find(AVATAR_DIR, "Player" + i + ".png") != null; i++) {
+				avatarImages.add(read(AVATAR_DIR, "Player" + i + ".png", pool));
+			}
+			pool.shutdown(); // the threads end when the images have been read
+
+			ArrayList<CompletableFuture<BufferedImage>> all =
+					new ArrayList<CompletableFuture<BufferedImage>>(cardImages);
+			all.addAll(avatarImages);
+			loading = CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()]))
+					.thenApply(new Function<Void, CardImages>() {
+						public CardImages apply(Void v) {
+							return new CardImages(join(cardImages), join(avatarImages));
+						}
+					});
+		}
+		return loading;
+	}
+
+	/**
+	 * Checks if the images have been read.
+	 *
+	 * @return true if the images are ready to be drawn, false otherwise
+	 */
+	public static synchronized boolean isReady() {
+		return (loading != null) && loading.isDone();
+	}
+
+	/**
+	 * Returns the images, reading them first (or waiting for load()) if they
+	 * are not ready yet.
+	 *
+	 * @return the images of the cards and avatars
+	 */
+	public static CardImages getInstance() {
+		return load().join();
+	}
+
+	/**
+	 * Returns the name of the image file of a card (e.g. "as.gif" for the ace
+	 * of spades).
+	 *
+	 * @param card the card, or null for the back of the cards
+	 * @return the name of the image file
+	 */
+	public static String getFileName(Card card) {
+		if (card == null) {
+			return "b.gif";
+		}
+		return "" + RANKS.charAt(card.getRank()) + SUITS.charAt(card.getSuit()) + ".gif";
+	}
+
+	// Draws the images into the atlases
+	private CardImages(ArrayList<BufferedImage> cardImages, ArrayList<BufferedImage> avatarImages) {
+		// the pixels of the cards are either opaque or transparent, and such
+		// an image is copied much faster than a translucent one
+		cards = new Atlas(cardImages, Transparency.BITMASK);
+		avatars = new Atlas(avatarImages, Transparency.TRANSLUCENT);
+	}
+
+	/**
+	 * Draws the face of a card.
+	 *
+	 * @param g the graphics context
+	 * @param card the card
+	 * @param x the x coordinate of the top left corner
+	 * @param y the y coordinate of the top left corner
+	 */
+	public void drawCard(Graphics g, Card card, int x, int y) {
+		cards.draw(g, card.getSuit() * 13 + card.getRank(), x, y);
+	}
+
+	/**
+	 * Draws the back of the cards.
+	 *
+	 * @param g the graphics context
+	 * @param x the x coordinate of the top left corner
+	 * @param y the y coordinate of the top left corner
+	 */
+	public void drawBack(Graphics g, int x, int y) {
+		cards.draw(g, BACK, x, y);
+	}
+
+	/**
+	 * Draws the avatar of a player; nothing is drawn if there is no avatar for
+	 * the player.
+	 *
+	 * @param g the graphics context
+	 * @param playerIdx the index of the player
+	 * @param x the x coordinate of the top left corner
+	 * @param y the y coordinate of the top left corner
+	 */
+	public void drawAvatar(Graphics g, int playerIdx, int x, int y) {
+		avatars.draw(g, playerIdx, x, y);
+	}
+
+	// Returns the location of an image, on the class path or else in the
+	// working directory, or null if there is no such image
+	private static URL find(String dir, String fileName) {
+		URL url = CardImages.class.getResource("/" + dir + "/" + fileName);
+		if (url == null) {
+			File file = new File(dir, fileName);
+			try {
+				url = file.exists() ? file.toURI().toURL() : null;
+			} catch (IOException e) {
+				url = null;
+			}
+		}
+		return url;
+	}
+
+	// Reads an image on the pool; the image is null (after the error has been
+	// printed) if it cannot be read
+	private static CompletableFuture<BufferedImage> read(final String dir, final String fileName,
+			ExecutorService pool) {
+		return CompletableFuture.supplyAsync(new Supplier<BufferedImage>() {
+			public BufferedImage get() {
+				URL url = find(dir, fileName);
+				try {
+					BufferedImage image = (url == null) ? null : ImageIO.read(url);
+					if (image == null) {
+						System.out.println("Error in reading " + dir + "/" + fileName
+								+ ((url == null) ? ": not found" : ": unknown format"));
+					}
+					return image;
+				} catch (IOException e) {
+					System.out.println("Error in reading " + dir + "/" + fileName + ": " + e.getMessage());
+					return null;
+				}
+			}
+		}, pool);
+	}
+
+	// Returns the images read
+	private static ArrayList<BufferedImage> join(ArrayList<CompletableFuture<BufferedImage>> images) {
+		ArrayList<BufferedImage> result = new ArrayList<BufferedImage>(images.size());
+		for (CompletableFuture<BufferedImage> image : images) {
+			result.add(image.join());
+		}
+		return result;
+	}
+
+	/**
+	 * This class is used to model an atlas, i.e. a single image holding a list
+	 * of images, which are placed in rows, left to right.
+	 */
+	private static class Atlas {
+		private final BufferedImage image;
+		private final Rectangle[] regions;
+
+		// Draws the images (an image which could not be read is left out)
+		private Atlas(ArrayList<BufferedImage> images, int transparency) {
+			regions = new Rectangle[images.size()];
+			int x = 0, y = 0, rowHeight = 0;
+			for (int i = 0; i < images.size(); i++) {
+				BufferedImage image = images.get(i);
+				if (image == null) {
+					continue;
+				}
+				if (x + image.getWidth() > ATLAS_WIDTH) {
+					x = 0;
+					y += rowHeight;
+					rowHeight = 0;
+				}
+				regions[i] = new Rectangle(x, y, image.getWidth(), image.getHeight());
+				x += image.getWidth();
+				rowHeight = Math.max(rowHeight, image.getHeight());
+			}
+
+			this.image = createImage(ATLAS_WIDTH, Math.max(1, y + rowHeight), transparency);
+			Graphics2D g = this.image.createGraphics();
+			for (int i = 0; i < images.size(); i++) {
+				if (regions[i] != null) {
+					g.drawImage(images.get(i), regions[i].x, regions[i].y, null);
+				}
+			}
+			g.dispose();
+		}
+
+		// Copies the region of an image (nothing is drawn for a missing image)
+		private void draw(Graphics g, int i, int x, int y) {
+			Rectangle region = (i >= 0 && i < regions.length) ? regions[i] : null;
+			if (region != null) {
+				g.drawImage(image, x, y, x + region.width, y + region.height, region.x, region.y,
+						region.x + region.width, region.y + region.height, null);
+			}
+		}
+
+		// Creates an image in the format of the screen if there is one
+		private static BufferedImage createImage(int width, int height, int transparency) {
+			if (!GraphicsEnvironment.isHeadless()) {
+				return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+						.getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+			}
+			if (transparency == Transparency.BITMASK) {
+				// the format of such an image on screen (RGB with a 1-bit alpha)
+				ColorModel model = new DirectColorModel(25, 0xff0000, 0xff00, 0xff, 0x1000000);
+				return new BufferedImage(model, model.createCompatibleWritableRaster(width, height),
+						false, null);
+			}
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+	}
+}
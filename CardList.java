@@ -65,6 +65,29 @@ public class CardList implements Serializable {
 		return cards.remove(card);
 	}
 
+	/**
+	 * Removes every card in the specified set from this list in a single pass,
+	 * keeping the remaining cards in their original order.
+	 * 
+	 * @param set the set of cards to be removed from this list
+	 * @return the number of cards removed from this list
+	 */
+	public int removeCards(BigTwoCardSet set) {
+		long mask = set.getMask();
+		int j = 0;
+		for (int i = 0; i < cards.size(); i++) {
+			Card card = cards.get(i);
+			if ((mask & (1L << BigTwoCardSet.indexOf(card))) == 0) {
+				cards.set(j++, card);
+			}
+		}
+		int removed = cards.size() - j;
+		for (int i = cards.size() - 1; i >= j; i--) {
+			cards.remove(i);
+		}
+		return removed;
+	}
+
 	/**
 	 * Removes all cards from this list.
 	 */
@@ -0,0 +1,197 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * This class is used to load test a running card game server with a burst of
+ * connections, e.g. to compare the platform and virtual thread modes of
+ * BigTwoServer:
+ *
+ * <pre>
+ * java BigTwoServer 2396                  (or: java BigTwoServer 2396 --virtual)
+ * java ConnectionLoadTest 127.0.0.1 2396 10000 5 4
+ * </pre>
+ *
+ * All the connections are opened at once from a single client thread; each
+ * one joins a room (4 connections per room by default) and is then held idle.
+ * The test reports the time until each connection receives its first message
+ * from the server, how many were seated (PLAYER_LIST) or turned away (FULL),
+ * and how many failed. Every connection costs the server a handler thread
+ * which waits for the next message, so the comparison shows the cost of
+ * platform threads against virtual threads. The virtual mode needs a Java 21
+ * runtime for the server; on Java 17 "--virtual" falls back to platform
+ * threads (the server logs it), so both runs would measure the same mode.
+ *
+ * @author Kenneth Wong
+ *
+ */
+public class ConnectionLoadTest {
+	private static class Client {
+		SocketChannel channel;
+		long startTime; // nanoTime when connect() was called
+		long firstByteTime = -1; // nanoTime when the first byte arrived
+		ByteBuffer request; // stream header and JOIN message to be sent
+		boolean failed = false;
+		boolean closedByServer = false;
+		ByteArrayOutputStream received = new ByteArrayOutputStream();
+	}
+
+	/**
+	 * main() method for running the load test.
+	 *
+	 * @param args
+	 *            host, port, number of connections, the number of seconds to
+	 *            hold the connections, and the number of connections per room
+	 *            (default 127.0.0.1 2396 1000 5 4)
+	 * @throws Exception
+	 *             if the selector cannot be opened
+	 */
+	public static void main(String[] args) throws Exception {
+		String host = (args.length > 0) ? args[0] : "127.0.0.1";
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : 2396;
+		int numOfConnections = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+		int holdSeconds = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+		int seatsPerRoom = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		Selector selector = Selector.open();
+		Client[] clients = new Client[numOfConnections];
+		long begin = System.nanoTime();
+		for (int i = 0; i < numOfConnections; i++) {
+			Client client = new Client();
+			clients[i] = client;
+			client.request = joinRequest(i / seatsPerRoom, "load" + i);
+			client.startTime = System.nanoTime();
+			try {
+				client.channel = SocketChannel.open();
+				client.channel.configureBlocking(false);
+				client.channel.connect(address);
+				client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+			} catch (Exception ex) {
+				client.failed = true;
+			}
+		}
+
+		// waits for the responses while holding the connections
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long end = System.nanoTime() + holdSeconds * 1000000000L;
+		while (System.nanoTime() < end) {
+			selector.select(100);
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Client client = (Client) key.attachment();
+				try {
+					if (key.isConnectable()) {
+						client.channel.finishConnect();
+						key.interestOps(SelectionKey.OP_WRITE);
+					} else if (key.isWritable()) {
+						client.channel.write(client.request);
+						if (!client.request.hasRemaining()) {
+							key.interestOps(SelectionKey.OP_READ);
+						}
+					} else if (key.isReadable()) {
+						buffer.clear();
+						int n = client.channel.read(buffer);
+						if (n < 0) {
+							client.closedByServer = true;
+							key.cancel();
+							client.channel.close();
+						} else if (n > 0) {
+							if (client.firstByteTime < 0) {
+								client.firstByteTime = System.nanoTime();
+							}
+							client.received.write(buffer.array(), 0, n);
+						}
+					}
+				} catch (Exception ex) {
+					client.failed = true;
+					key.cancel();
+				}
+			}
+		}
+
+		// classifies the connections by the first message received
+		int seated = 0, full = 0, silent = 0, failed = 0;
+		long[] latencies = new long[numOfConnections];
+		int numOfLatencies = 0;
+		for (Client client : clients) {
+			if (client.firstByteTime >= 0) {
+				latencies[numOfLatencies++] = client.firstByteTime - client.startTime;
+			}
+			int type = firstMessageType(client.received.toByteArray());
+			if (type == CardGameMessage.PLAYER_LIST) {
+				seated++;
+			} else if (type == CardGameMessage.FULL) {
+				full++;
+			} else if (client.failed) {
+				failed++;
+			} else {
+				silent++;
+			}
+			try {
+				if (client.channel != null) {
+					client.channel.close();
+				}
+			} catch (Exception ex) {
+				// ignore
+			}
+		}
+		selector.close();
+
+		long[] sorted = Arrays.copyOf(latencies, numOfLatencies);
+		Arrays.sort(sorted);
+		System.out.println("Connections:        " + numOfConnections);
+		System.out.println("Seated:             " + seated);
+		System.out.println("Rejected (FULL):    " + full);
+		System.out.println("No response:        " + silent);
+		System.out.println("Failed:             " + failed);
+		System.out.println("First message p50:  " + millis(percentile(sorted, 0.50)) + " ms");
+		System.out.println("First message p99:  " + millis(percentile(sorted, 0.99)) + " ms");
+		System.out.println("First message max:  " + millis(percentile(sorted, 1.00)) + " ms");
+		System.out.println("Elapsed:            " + millis(System.nanoTime() - begin) + " ms");
+	}
+
+	// Returns the bytes sent by a client joining the specified room
+	private static ByteBuffer joinRequest(int roomID, String name) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(new CardGameMessage(CardGameMessage.JOIN, roomID, name));
+		oos.flush();
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	// Returns the type of the first message in the bytes, or -1 if none
+	private static int firstMessageType(byte[] bytes) {
+		if (bytes.length == 0) {
+			return -1;
+		}
+		try {
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			return ((GameMessage) ois.readObject()).getType();
+		} catch (Exception ex) {
+			return -1;
+		}
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.2f", nanos / 1e6);
+	}
+}
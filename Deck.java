@@ -1,3 +1,6 @@
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
 /**
  * This class is used to represent a deck of cards in general card games.
  * 
@@ -5,6 +8,14 @@
  */
 public class Deck extends CardList {
 	private static final long serialVersionUID = -3886066435694112173L;
+	// random number generator of each thread (its state is larger than that of
+	// ThreadLocalRandom, though no generator of this size reaches all the 52!
+	// orders of a deck)
+	private static final ThreadLocal<RandomGenerator> THREAD_RANDOM = new ThreadLocal<RandomGenerator>() {
+		protected RandomGenerator initialValue() {
+			return RandomGeneratorFactory.<RandomGenerator>of("L64X128MixRandom").create();
+		}
+	};
 
 	/**
 	 * Creates and returns an instance of the Deck class.
@@ -20,22 +31,46 @@ public class Deck extends CardList {
 		removeAllCards();
 		for (int i = 0; i < 4; i++) {
 			for (int j = 0; j < 13; j++) {
-				Card card = new Card(i, j);
-				addCard(card);
+				addCard(Card.valueOf(i, j));
 			}
 		}
 	}
 
 	/**
-	 * Shuffles the deck of cards.
+	 * Shuffles the deck of cards with the random number generator of the
+	 * calling thread (see getThreadRandom()).
 	 */
 	public void shuffle() {
-		for (int i = 0; i < this.size(); i++) {
-			int j = (int) (Math.random() * this.size());
+		shuffle(getThreadRandom());
+	}
+
+	/**
+	 * Shuffles the deck of cards with the specified random number generator
+	 * (Fisher-Yates shuffle), so that every order of the cards is equally
+	 * likely if the generator is uniform.
+	 * 
+	 * @param random
+	 *            the random number generator, e.g. a SecureRandom for ranked
+	 *            games, or a seeded SplittableRandom for reproducible ones
+	 */
+	public void shuffle(RandomGenerator random) {
+		for (int i = this.size() - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
 			if (i != j) {
 				Card card = setCard(i, getCard(j));
 				setCard(j, card);
 			}
 		}
 	}
+
+	/**
+	 * Returns the random number generator of the calling thread, an
+	 * L64X128MixRandom seeded at random, which is not shared with any other
+	 * thread and so needs no synchronization.
+	 * 
+	 * @return the random number generator of the calling thread
+	 */
+	public static RandomGenerator getThreadRandom() {
+		return THREAD_RANDOM.get();
+	}
 }
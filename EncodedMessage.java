@@ -0,0 +1,126 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class is used to model a message which is encoded once and then
+ * written to many connections, e.g. a message broadcast to a room. The
+ * message is encoded lazily, at most once for each wire format, into an
+ * immutable payload which every MessageWriter of that format writes as it
+ * is (a NioConnection even queues the same buffer without copying it).
+ * <p>
+ * The Java serialization payload is self-contained, i.e. it is written as if
+ * by a new ObjectOutputStream, without back-references to the objects written
+ * before; a ManagedObjectOutputStream therefore resets itself before writing
+ * it. As the class descriptors are then sent again with every message (about
+ * 150 bytes instead of about 20 for a move), a writer of this format only
+ * shares the payload with a large number of recipients, and otherwise encodes
+ * the message itself.
+ * <p>
+ * An EncodedMessage must not be shared between threads while it is being
+ * encoded; the payloads, once created, are never modified.
+ * 
+ * @author Kenneth Wong
+ * 
+ */
+public class EncodedMessage {
+	/**
+	 * The minimum number of recipients of a message for which the writers of
+	 * the Java serialization format share its self-contained payload.
+	 */
+	public static final int MIN_SHARED_SERIALIZATION_RECIPIENTS = 32;
+
+	// size of the stream header written by an ObjectOutputStream
+	private static final int STREAM_HEADER_SIZE = 4;
+
+	private final GameMessage message;
+	private final int numOfRecipients;
+	private ByteBuffer binary = null; // created on demand
+	private ByteBuffer serialized = null; // created on demand
+
+	/**
+	 * Creates and returns an instance of the EncodedMessage class.
+	 * 
+	 * @param message
+	 *            the message to be encoded
+	 * @param numOfRecipients
+	 *            the number of writers the message will be written to
+	 */
+	public EncodedMessage(GameMessage message, int numOfRecipients) {
+		this.message = message;
+		this.numOfRecipients = numOfRecipients;
+	}
+
+	/**
+	 * Returns the message.
+	 * 
+	 * @return the message
+	 */
+	public GameMessage getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns the number of writers the message will be written to.
+	 * 
+	 * @return the number of recipients
+	 */
+	public int getNumOfRecipients() {
+		return numOfRecipients;
+	}
+
+	/**
+	 * Writes the message in the binary format of CardGameCodec (without the
+	 * stream header) to the specified stream, encoding it on the first call.
+	 * 
+	 * @param out
+	 *            the stream to be written
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public int writeBinary(OutputStream out) throws IOException {
+		if (binary == null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			CardGameCodec.encode(new DataOutputStream(bytes), message);
+			binary = ByteBuffer.wrap(bytes.toByteArray());
+		}
+		return write(out, binary);
+	}
+
+	/**
+	 * Writes the message serialized by a new ObjectOutputStream (without the
+	 * stream header) to the specified stream, serializing it on the first
+	 * call. The stream must have been reset just before.
+	 * 
+	 * @param out
+	 *            the stream to be written
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public int writeSerialized(OutputStream out) throws IOException {
+		if (serialized == null) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeUnshared(message);
+			oos.flush();
+			serialized = ByteBuffer.wrap(bytes.toByteArray(), STREAM_HEADER_SIZE,
+					bytes.size() - STREAM_HEADER_SIZE).slice();
+		}
+		return write(out, serialized);
+	}
+
+	// Writes a payload, sharing the buffer itself with a NioConnection
+	private static int write(OutputStream out, ByteBuffer payload) throws IOException {
+		if (out instanceof NioConnection.ConnectionOutputStream) {
+			((NioConnection.ConnectionOutputStream) out).writeShared(payload.asReadOnlyBuffer());
+		} else {
+			out.write(payload.array(), payload.arrayOffset(), payload.remaining());
+		}
+		return payload.remaining();
+	}
+}
@@ -42,24 +42,5 @@ public class Flush extends Hand {
     public String getType() {
         return "Flush";
     }
-    
-    /**
-     * Check if the hand of Flush beats a specific hand
-     * (if the specific hand is a Flush hand with the different suit, compare the suit)
-     * 
-     * @param hand the specific hand require to check if it's beaten by the hand if Flush
-     * @return true if the hand of Flush beats the specific hand, otherwise false
-     */
-    public boolean beats(Hand hand) {
-        if (hand.getType() == "Flush") {
-        	if (this.getTopCard().getSuit() > hand.getTopCard().getSuit()) {
-        		return super.beats(hand);
-        	}
-            return (this.getTopCard().getSuit() > hand.getTopCard().getSuit());
-
-        } else {
-            return super.beats(hand);
-        }
-    }
 
 }
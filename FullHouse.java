@@ -51,46 +51,4 @@ public class FullHouse extends Hand{
     public String getType() {
         return "FullHouse";
     }
-    /**
-     * Return the top card 
-     * (i.e. the card with the highest suit in the triplet)
-     * 
-     * @return the card instance of the top card
-     */
-    public Card getTopCard() {
-    	if (this.isValid()) {
-	    	int count1 = 0, count2 = 0;
-	        int rank1 = this.getCard(0).getRank(), rank2 = 0;
-	        for (int i = 0; i < this.size(); i++) {
-	        	if (this.getCard(i).getRank() == rank1) {
-	        		count1++;
-	        	}
-	        	else if (rank2 == 0) {
-	        		rank2 = this.getCard(i).getRank();
-	        	}
-	        	else if (this.getCard(i).getRank() == rank2) {
-	        		count2++;
-	        	}
-	        }
-	        int triple_rank = 0;
-	        if (count1 == 3) {
-	        	triple_rank = rank1;
-	        }
-	        else {
-	        	triple_rank = rank2;
-	        }
-	        
-	        Card top_card = this.getCard(0);
-	        for (int i = 1; i < this.size(); i++) {
-	        	if ((this.getCard(i).getRank() == triple_rank) && (this.getCard(i).getSuit() > top_card.getSuit())) {
-	        		top_card = this.getCard(i);
-	        	}
-	        }
-	        return top_card;
-	        
-    	}
-    	else {
-    		return super.getTopCard();
-    	}
-    }
 }
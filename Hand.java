@@ -5,6 +5,7 @@
  */
 public abstract class Hand extends CardList {
     private CardGamePlayer player;
+    private int strengthKey; // key from HandClassifier, computed once
 
     /**
      * Building a hand with a player and their chosen list of cards
@@ -17,6 +18,7 @@ public abstract class Hand extends CardList {
         for (int i = 0; i < cards.size(); i++) {
             this.addCard(cards.getCard(i));
         }
+        this.strengthKey = HandClassifier.classify(this);
     }
 
     /**
@@ -29,47 +31,48 @@ public abstract class Hand extends CardList {
     }
 
     /**
-     * Return the top card (i.e. the biggest card)
+     * Return the strength key of the hand, computed when the hand is built.
+     * The hand type is in the high bits, so between two valid hands of five
+     * cards the one with the larger key is the stronger one, and between two
+     * hands of the same type the key orders them by top card (or, for Flush,
+     * by suit and then by the rank of the top card).
+     * 
+     * @return the strength key, or HandClassifier.INVALID if the cards do not
+     * compose a valid hand
+     */
+    public int getStrengthKey() {
+        return this.strengthKey;
+    }
+
+    /**
+     * Return the top card (i.e. the biggest card, or for Full House and Quad
+     * the card with the highest suit in the triplet or quadruplet)
      * 
      * @return the card instance of the top card
      */
     public Card getTopCard() {
-        this.sort();
-        return this.getCard(this.size() - 1);
+        if (this.strengthKey == HandClassifier.INVALID) {
+            this.sort();
+            return this.getCard(this.size() - 1);
+        }
+        int top = HandClassifier.topCardIndexOf(this.strengthKey);
+        for (int i = 0; i < this.size(); i++) {
+            if (BigTwoCardSet.indexOf(this.getCard(i)) == top) {
+                return this.getCard(i);
+            }
+        }
+        return null;
     }
 
     /**
      * Check if the hand beats a specific hand
+     * (only hands with the same number of cards can be compared)
      * 
      * @param hand the specific hand require to check if it's beaten by the hand
      * @return true if the hand beats the specific hand, otherwise false
      */
     public boolean beats(Hand hand) {
-        if (this.getType() == hand.getType()) {
-            if (this.getTopCard().compareTo(hand.getTopCard()) == 1) {
-                return true;
-            } else {
-                return false;
-            }
-        } else {
-            if (this.getType() == "StrightFlush") {
-                return true;
-            } else if (hand.getType() == "StrightFlush") {
-                return false;
-            } else if (this.getType() == "Quad") {
-                return true;
-            } else if (hand.getType() == "Quad") {
-                return false;
-            } else if (this.getType() == "FullHouse") {
-                return true;
-            } else if (hand.getType() == "FullHouse") {
-                return false;
-            } else if (this.getType() == "Flush") {
-                return true;
-            } else {
-                return false;
-            }
-        }
+        return (this.size() == hand.size()) && (this.strengthKey > hand.strengthKey);
     }
 
     /**
@@ -0,0 +1,255 @@
+/**
+ * This class is used to classify a list of cards into a Big Two hand with a
+ * single table lookup. Every combination of 1, 2, 3 or 5 distinct cards is
+ * mapped to a unique slot by a perfect hash (its index in the combinatorial
+ * number system), and each slot stores a key holding the hand type and a
+ * strength value which can be compared between hands of the same type.
+ * <p>
+ * The tables are built lazily on first use. The five-card table has
+ * C(52, 5) = 2,598,960 entries (about 5 MB).
+ *
+ * @author Chan Sze Wing
+ */
+public final class HandClassifier {
+	/**
+	 * The key of a list of cards which does not compose a valid hand.
+	 */
+	public static final int INVALID = 0;
+	/** Type code of a Single. */
+	public static final int SINGLE = 1;
+	/** Type code of a Pair. */
+	public static final int PAIR = 2;
+	/** Type code of a Triple. */
+	public static final int TRIPLE = 3;
+	/** Type code of a Straight. */
+	public static final int STRAIGHT = 4;
+	/** Type code of a Flush. */
+	public static final int FLUSH = 5;
+	/** Type code of a Full House. */
+	public static final int FULL_HOUSE = 6;
+	/** Type code of a Quad. */
+	public static final int QUAD = 7;
+	/** Type code of a Straight Flush. */
+	public static final int STRAIGHT_FLUSH = 8;
+
+	private static final int STRENGTH_BITS = 6;
+	private static final int STRENGTH_MASK = (1 << STRENGTH_BITS) - 1;
+	private static final int N = BigTwoCardSet.NUM_OF_CARDS;
+	// BINOM[n][k] = C(n, k) for 0 <= n <= 52, 0 <= k <= 5
+	private static final int[][] BINOM = new int[N + 1][6];
+
+	static {
+		for (int n = 0; n <= N; n++) {
+			BINOM[n][0] = 1;
+			for (int k = 1; k <= 5 && k <= n; k++) {
+				BINOM[n][k] = BINOM[n - 1][k - 1] + BINOM[n - 1][k];
+			}
+		}
+	}
+
+	private HandClassifier() {
+	}
+
+	/**
+	 * Returns the key of the hand composed by the specified list of cards.
+	 *
+	 * @param cards the list of cards
+	 * @return the key of the hand, or INVALID if the cards do not compose a valid
+	 *         hand
+	 */
+	public static int classify(CardList cards) {
+		long mask = BigTwoCardSet.maskOf(cards);
+		if (Long.bitCount(mask) != cards.size()) {
+			// the same card is listed more than once
+			return INVALID;
+		}
+		return classify(mask);
+	}
+
+	/**
+	 * Returns the key of the hand composed by the cards in the specified mask.
+	 *
+	 * @param mask the 52-bit mask of the cards (see BigTwoCardSet)
+	 * @return the key of the hand, or INVALID if the cards do not compose a valid
+	 *         hand
+	 */
+	public static int classify(long mask) {
+		int size = Long.bitCount(mask);
+		return (size > 5) ? INVALID : lookup(size, comboIndex(mask));
+	}
+
+	/**
+	 * Returns the perfect-hash index of a combination of cards, i.e. the sum of
+	 * C(b_i, i + 1) over the set bit positions b_0 &lt; b_1 &lt; ... of the mask.
+	 * Combinations of the same size are mapped to the distinct indices 0 to
+	 * C(52, size) - 1.
+	 *
+	 * @param mask the 52-bit mask of the cards (at most 5 bits set)
+	 * @return the index of the combination
+	 */
+	public static int comboIndex(long mask) {
+		int index = 0;
+		for (int i = 1; mask != 0; i++) {
+			index += BINOM[Long.numberOfTrailingZeros(mask)][i];
+			mask &= mask - 1;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the key stored for the combination with the specified size and
+	 * perfect-hash index, for callers which compute comboIndex() incrementally.
+	 *
+	 * @param size  the number of cards (1, 2, 3 or 5)
+	 * @param index the index of the combination (see comboIndex())
+	 * @return the key of the hand, or INVALID
+	 */
+	static int lookup(int size, int index) {
+		switch (size) {
+		case 1:
+			return Small.SINGLES[index];
+		case 2:
+			return Small.PAIRS[index];
+		case 3:
+			return Small.TRIPLES[index];
+		case 5:
+			return Large.FIVES[index];
+		default:
+			return INVALID;
+		}
+	}
+
+	/**
+	 * Returns the binomial coefficient C(n, k).
+	 *
+	 * @param n an int value between 0 and 52
+	 * @param k an int value between 0 and 5
+	 * @return C(n, k)
+	 */
+	static int binomial(int n, int k) {
+		return BINOM[n][k];
+	}
+
+	/**
+	 * Returns the hand type of the specified key.
+	 *
+	 * @param key the key returned by classify()
+	 * @return the type code (SINGLE to STRAIGHT_FLUSH), or INVALID
+	 */
+	public static int typeOf(int key) {
+		return key >>> STRENGTH_BITS;
+	}
+
+	/**
+	 * Returns the strength of the specified key. Strengths are only comparable
+	 * between keys of the same type.
+	 *
+	 * @param key the key returned by classify()
+	 * @return the strength of the hand
+	 */
+	public static int strengthOf(int key) {
+		return key & STRENGTH_MASK;
+	}
+
+	/**
+	 * Returns the bit index (see BigTwoCardSet) of the top card of the hand with
+	 * the specified key.
+	 *
+	 * @param key the key returned by classify()
+	 * @return the bit index of the top card
+	 */
+	public static int topCardIndexOf(int key) {
+		int strength = strengthOf(key);
+		if (typeOf(key) == FLUSH) {
+			return (strength % 13) * 4 + strength / 13;
+		}
+		return strength;
+	}
+
+	/**
+	 * Returns the number of cards in a hand of the specified type.
+	 *
+	 * @param type the type code
+	 * @return the number of cards in a hand of this type
+	 */
+	public static int sizeOf(int type) {
+		return (type <= TRIPLE) ? type : 5;
+	}
+
+	// Returns the key of a hand of the specified type and strength
+	private static int key(int type, int strength) {
+		return (type << STRENGTH_BITS) | strength;
+	}
+
+	// Returns the key of the five cards at the specified ascending bit indices
+	private static int classifyFive(int b0, int b1, int b2, int b3, int b4) {
+		int r0 = b0 >>> 2, r1 = b1 >>> 2, r2 = b2 >>> 2, r3 = b3 >>> 2, r4 = b4 >>> 2;
+		int suit = b0 & 3;
+		boolean flush = ((b1 & 3) == suit) && ((b2 & 3) == suit) && ((b3 & 3) == suit) && ((b4 & 3) == suit);
+		boolean straight = (r1 == r0 + 1) && (r2 == r0 + 2) && (r3 == r0 + 3) && (r4 == r0 + 4);
+		if (straight && flush) {
+			return key(STRAIGHT_FLUSH, b4);
+		} else if (r0 == r3) {
+			return key(QUAD, b3);
+		} else if (r1 == r4) {
+			return key(QUAD, b4);
+		} else if (r0 == r2 && r3 == r4) {
+			return key(FULL_HOUSE, b2);
+		} else if (r0 == r1 && r2 == r4) {
+			return key(FULL_HOUSE, b4);
+		} else if (flush) {
+			return key(FLUSH, suit * 13 + r4);
+		} else if (straight) {
+			return key(STRAIGHT, b4);
+		} else {
+			return INVALID;
+		}
+	}
+
+	// Holder of the tables for 1 to 3 cards
+	private static final class Small {
+		static final short[] SINGLES = new short[BINOM[N][1]];
+		static final short[] PAIRS = new short[BINOM[N][2]];
+		static final short[] TRIPLES = new short[BINOM[N][3]];
+
+		static {
+			int i1 = 0, i2 = 0, i3 = 0;
+			for (int b0 = 0; b0 < N; b0++) {
+				SINGLES[i1++] = (short) key(SINGLE, b0);
+			}
+			for (int b1 = 1; b1 < N; b1++) {
+				for (int b0 = 0; b0 < b1; b0++) {
+					PAIRS[i2++] = (short) (((b0 >>> 2) == (b1 >>> 2)) ? key(PAIR, b1) : INVALID);
+				}
+			}
+			for (int b2 = 2; b2 < N; b2++) {
+				for (int b1 = 1; b1 < b2; b1++) {
+					for (int b0 = 0; b0 < b1; b0++) {
+						TRIPLES[i3++] = (short) (((b0 >>> 2) == (b2 >>> 2)) ? key(TRIPLE, b2) : INVALID);
+					}
+				}
+			}
+		}
+	}
+
+	// Holder of the table for 5 cards
+	private static final class Large {
+		static final short[] FIVES = new short[BINOM[N][5]];
+
+		static {
+			// nested loops enumerate the combinations in increasing comboIndex() order
+			int i = 0;
+			for (int b4 = 4; b4 < N; b4++) {
+				for (int b3 = 3; b3 < b4; b3++) {
+					for (int b2 = 2; b2 < b3; b2++) {
+						for (int b1 = 1; b1 < b2; b1++) {
+							for (int b0 = 0; b0 < b1; b0++) {
+								FIVES[i++] = (short) classifyFive(b0, b1, b2, b3, b4);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is used to record a distribution of latencies (in nanoseconds)
+ * from many threads, in the manner of HdrHistogram: the values are counted in
+ * buckets whose width grows with the value, so that a histogram has a fixed
+ * size and a bounded relative error (1/64, i.e. 2 significant digits) at any
+ * scale. Recording a value is a few shifts and an atomic increment, without
+ * any lock or allocation, so a server can record every message.
+ * <p>
+ * The values from 0 to 127 have a bucket each. Above, the values from 2^k to
+ * 2^(k+1) - 1 are split into 64 buckets of width 2^(k-6). The values above
+ * MAX_VALUE (about 68 seconds) are counted as MAX_VALUE.
+ *
+ * @author Kenneth Wong
+ */
+public class LatencyHistogram {
+	/**
+	 * The largest value recorded exactly; larger values are counted as this
+	 * value.
+	 */
+	public static final long MAX_VALUE = (1L << 36) - 1;
+	// number of buckets of each power of 2 (above the first 128 values)
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param nanos
+	 *            the value (a negative value is recorded as 0)
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 *
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of the values recorded.
+	 *
+	 * @return the sum of the values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 *
+	 * @return the largest value, or 0 if none
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 *
+	 * @return the mean, or 0 if no value has been recorded
+	 */
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns the values at the specified percentiles, from a single pass over
+	 * the buckets. A value is the largest value of its bucket (but not above
+	 * the largest value recorded), so it is at most 1/64 above the exact
+	 * percentile. Values recorded during the call may or may not be included.
+	 *
+	 * @param ps
+	 *            the percentiles, from 0 to 1, in increasing order
+	 * @return the values at the percentiles (0 if no value has been recorded)
+	 */
+	public long[] getPercentiles(double... ps) {
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		long[] values = new long[ps.length];
+		if (total == 0) {
+			return values;
+		}
+		long highest = max.get();
+		int i = 0;
+		long seen = 0;
+		for (int p = 0; p < ps.length; p++) {
+			long rank = Math.max(1, (long) Math.ceil(ps[p] * total));
+			while (i < snapshot.length - 1 && seen + snapshot[i] < rank) {
+				seen += snapshot[i];
+				i++;
+			}
+			values[p] = Math.min(highestValueOf(i), highest);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the value at the specified percentile (see getPercentiles()).
+	 *
+	 * @param p
+	 *            the percentile, from 0 to 1
+	 * @return the value at the percentile (0 if no value has been recorded)
+	 */
+	public long getPercentile(double p) {
+		return getPercentiles(p)[0];
+	}
+
+	// Returns the bucket of a value from 0 to MAX_VALUE
+	private static int indexOf(long value) {
+		// the values below 2 * SUB_BUCKETS have a bucket each (shift 0)
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	// Returns the largest value of a bucket
+	private static long highestValueOf(int index) {
+		int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+		long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
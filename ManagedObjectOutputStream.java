@@ -0,0 +1,210 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * This class is used to model a long-lived ObjectOutputStream for the
+ * messages of a connection. An ObjectOutputStream remembers every object it
+ * has written (so that it can write a back-reference when the object is
+ * written again) until it is reset, which on a connection kept for a whole
+ * session leaks memory on both ends, and makes an object which is modified
+ * and written again arrive unchanged. This stream therefore:
+ * <ul>
+ * <li>writes every message unshared, so that a message is never sent as a
+ * back-reference to an earlier (possibly modified) message;</li>
+ * <li>resets itself after a number of messages, or as soon as the number of
+ * objects remembered since the last reset reaches a bound;</li>
+ * <li>counts the bytes written and the objects remembered, so that the cost
+ * of a connection can be monitored.</li>
+ * </ul>
+ * Between resets, objects shared by several messages (such as the class
+ * descriptors and the interned cards) are still sent as back-references.
+ * <p>
+ * A message encoded once for many streams (see EncodedMessage) is
+ * self-contained, so this stream is reset both before and after writing it.
+ * 
+ * @author Kenneth Wong
+ * 
+ */
+public class ManagedObjectOutputStream extends ObjectOutputStream {
+	/**
+	 * The default number of messages written between two resets.
+	 */
+	public static final int DEFAULT_RESET_INTERVAL = 1024;
+	/**
+	 * The default maximum number of objects remembered before a reset.
+	 */
+	public static final int DEFAULT_MAX_RETAINED_OBJECTS = 1024;
+
+	private final CountingOutputStream counter;
+	private final int resetInterval;
+	private final int maxRetainedObjects;
+	private int numOfMessagesSinceReset = 0;
+	private int numOfRetainedObjects = 0;
+	private long bytesAtReset = 0;
+	private int numOfResets = 0;
+	private boolean resetPending = false;
+
+	/**
+	 * Creates and returns an instance of the ManagedObjectOutputStream class
+	 * with the default reset interval and bound of remembered objects.
+	 * 
+	 * @param out
+	 *            the stream to be written
+	 * @throws IOException
+	 *             if an I/O error occurs when writing the stream header
+	 */
+	public ManagedObjectOutputStream(OutputStream out) throws IOException {
+		this(out, DEFAULT_RESET_INTERVAL, DEFAULT_MAX_RETAINED_OBJECTS);
+	}
+
+	/**
+	 * Creates and returns an instance of the ManagedObjectOutputStream class.
+	 * 
+	 * @param out
+	 *            the stream to be written
+	 * @param resetInterval
+	 *            the number of messages written between two resets
+	 * @param maxRetainedObjects
+	 *            the maximum number of objects remembered before a reset
+	 * @throws IOException
+	 *             if an I/O error occurs when writing the stream header
+	 */
+	public ManagedObjectOutputStream(OutputStream out, int resetInterval,
+			int maxRetainedObjects) throws IOException {
+		this(new CountingOutputStream(out), resetInterval, maxRetainedObjects);
+	}
+
+	private ManagedObjectOutputStream(CountingOutputStream counter,
+			int resetInterval, int maxRetainedObjects) throws IOException {
+		super(counter);
+		this.counter = counter;
+		this.resetInterval = resetInterval;
+		this.maxRetainedObjects = maxRetainedObjects;
+		// replaceObject() is called once for every object entering the
+		// handle table, which is used to count them
+		enableReplaceObject(true);
+	}
+
+	/**
+	 * Writes the specified message unshared, resetting this stream first if
+	 * the reset interval or the bound of remembered objects has been reached.
+	 * (The reset is written before a message rather than after one, so that
+	 * the reader never finds a reset marker with no message behind it.)
+	 * 
+	 * @param message
+	 *            the message to be written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeMessage(Object message) throws IOException {
+		if (resetPending || numOfMessagesSinceReset >= resetInterval
+				|| numOfRetainedObjects >= maxRetainedObjects) {
+			reset();
+		}
+		writeUnshared(message);
+		numOfMessagesSinceReset++;
+	}
+
+	/**
+	 * Writes the specified message in its self-contained serialized form. The
+	 * stream is reset before the message, so that the reader interprets its
+	 * handles from scratch, and again before the next message written by
+	 * writeMessage(), as this stream has not remembered the objects of the
+	 * encoded message.
+	 * 
+	 * @param message
+	 *            the encoded message to be written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeEncoded(EncodedMessage message) throws IOException {
+		reset(); // also drains the buffered bytes to the counter
+		counter.writeEncoded(message);
+		numOfMessagesSinceReset++;
+		resetPending = true;
+	}
+
+	/**
+	 * Resets this stream (and the stream reading it), forgetting all the
+	 * objects written so far.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void reset() throws IOException {
+		super.reset();
+		resetPending = false;
+		numOfMessagesSinceReset = 0;
+		numOfRetainedObjects = 0;
+		bytesAtReset = counter.count;
+		numOfResets++;
+	}
+
+	/**
+	 * Returns the number of objects remembered since the last reset.
+	 * 
+	 * @return the number of objects in the handle table
+	 */
+	public int getRetainedObjects() {
+		return numOfRetainedObjects;
+	}
+
+	/**
+	 * Returns the number of bytes flushed since the last reset, i.e. the
+	 * serialized size of the objects remembered by the stream.
+	 * 
+	 * @return the number of bytes written since the last reset
+	 */
+	public long getRetainedBytes() {
+		return counter.count - bytesAtReset;
+	}
+
+	/**
+	 * Returns the number of bytes flushed to the underlying stream.
+	 * 
+	 * @return the total number of bytes written
+	 */
+	public long getBytesWritten() {
+		return counter.count;
+	}
+
+	/**
+	 * Returns the number of times this stream has been reset.
+	 * 
+	 * @return the number of resets
+	 */
+	public int getNumOfResets() {
+		return numOfResets;
+	}
+
+	// counts the objects entering the handle table
+	protected Object replaceObject(Object obj) {
+		numOfRetainedObjects++;
+		return obj;
+	}
+
+	// The stream counting the bytes written to the underlying stream
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		public void writeEncoded(EncodedMessage message) throws IOException {
+			count += message.writeSerialized(out);
+		}
+	}
+}
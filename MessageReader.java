@@ -0,0 +1,29 @@
+import java.io.IOException;
+
+/**
+ * This interface is used to model the receiving end of a connection of a
+ * network card game, which reads GameMessage objects in one of the wire
+ * formats of CardGameCodec.
+ * 
+ * @author Kenneth Wong
+ * 
+ */
+public interface MessageReader {
+	/**
+	 * Reads the next message, blocking until it has been received.
+	 * 
+	 * @return the message received
+	 * @throws IOException
+	 *             if an I/O error occurs or the message is malformed
+	 * @throws ClassNotFoundException
+	 *             if a serialized message refers to an unknown class
+	 */
+	public GameMessage readMessage() throws IOException, ClassNotFoundException;
+
+	/**
+	 * Returns true if the peer uses the binary wire format.
+	 * 
+	 * @return true for the binary format; false for Java serialization
+	 */
+	public boolean isBinary();
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+
+/**
+ * This interface is used to model the sending end of a connection of a
+ * network card game, which writes GameMessage objects in one of the wire
+ * formats of CardGameCodec.
+ * 
+ * @author Kenneth Wong
+ * 
+ */
+public interface MessageWriter {
+	/**
+	 * Writes the specified message. The message may be buffered until
+	 * flush() is called.
+	 * 
+	 * @param message
+	 *            the message to be written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeMessage(GameMessage message) throws IOException;
+
+	/**
+	 * Writes the specified message, which is encoded once and shared by all
+	 * the writers it is written to (a writer may still encode it itself if
+	 * that is cheaper for its format). The message may be buffered until
+	 * flush() is called.
+	 * 
+	 * @param message
+	 *            the encoded message to be written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeEncoded(EncodedMessage message) throws IOException;
+
+	/**
+	 * Sends all the buffered messages.
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Returns true if this writer uses the binary wire format.
+	 * 
+	 * @return true for the binary format; false for Java serialization
+	 */
+	public boolean isBinary();
+
+	/**
+	 * Returns the number of bytes written by this writer.
+	 * 
+	 * @return the total number of bytes written
+	 */
+	public long getBytesWritten();
+
+	/**
+	 * Returns the number of objects remembered by this writer (and by the
+	 * reader at the other end) to encode back-references. Always 0 for the
+	 * binary format.
+	 * 
+	 * @return the number of objects retained by the connection
+	 */
+	public int getRetainedObjects();
+
+	/**
+	 * Returns the serialized size of the objects remembered by this writer.
+	 * Always 0 for the binary format.
+	 * 
+	 * @return the number of bytes retained by the connection
+	 */
+	public long getRetainedBytes();
+}
@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+
+/**
+ * This class is used to enumerate the legal moves of a player in a Big Two
+ * card game. Moves are returned as 52-bit masks (see BigTwoCardSet) together
+ * with their HandClassifier keys. A generator owns its buffers and reuses
+ * them on every call, so generating moves does not allocate; a generator must
+ * therefore not be shared between threads.
+ *
+ * @author Chan Sze Wing
+ */
+public class MoveGenerator {
+	/**
+	 * The largest number of moves which can be generated from a hand of 13
+	 * cards, i.e. C(13, 1) + C(13, 2) + C(13, 3) + C(13, 5).
+	 */
+	public static final int MAX_MOVES = 13 + 78 + 286 + 1287;
+
+	private final int[] pos = new int[BigTwoCardSet.NUM_OF_CARDS]; // bit indices of the cards in hand
+	private long[] moves = new long[MAX_MOVES]; // masks of the generated moves
+	private int[] keys = new int[MAX_MOVES]; // keys of the generated moves
+	private int numOfMoves = 0;
+
+	/**
+	 * Generates the legal moves of the specified player against the hands
+	 * played on the table, following the same rules as
+	 * BigTwoEngine.checkMove(): the first hand of a game must contain the Three
+	 * of Diamonds, a player whose hand is still on top of the table may lead any
+	 * hand, and otherwise a move must have as many cards as, and beat, the last
+	 * hand on the table. Passing is not included.
+	 *
+	 * @param player       the player who makes the move
+	 * @param handsOnTable the list of hands played on the table
+	 * @return the number of legal moves generated
+	 */
+	public int generate(CardGamePlayer player, ArrayList<Hand> handsOnTable) {
+		long hand = BigTwoCardSet.maskOf(player.getCardsInHand());
+		if (handsOnTable.isEmpty()) {
+			return generate(hand, HandClassifier.INVALID, 1L << BigTwoCardSet.indexOf(0, 2));
+		}
+		Hand last = handsOnTable.get(handsOnTable.size() - 1);
+		if (last.getPlayer() == player) {
+			return generate(hand, HandClassifier.INVALID, 0L);
+		}
+		return generate(hand, last.getStrengthKey(), 0L);
+	}
+
+	/**
+	 * Generates the moves which can be made from the specified cards.
+	 *
+	 * @param hand     the 52-bit mask of the cards held by the player
+	 * @param tableKey the key of the hand to be beaten, or
+	 *                 HandClassifier.INVALID if any valid hand may be played
+	 * @param required the 52-bit mask of the cards every move must contain (0 if
+	 *                 none)
+	 * @return the number of moves generated
+	 */
+	public int generate(long hand, int tableKey, long required) {
+		int n = 0;
+		for (long rest = hand; rest != 0; rest &= rest - 1) {
+			pos[n++] = Long.numberOfTrailingZeros(rest);
+		}
+		if (n > 13) {
+			int capacity = HandClassifier.binomial(n, 1) + HandClassifier.binomial(n, 2)
+					+ HandClassifier.binomial(n, 3) + HandClassifier.binomial(n, 5);
+			if (moves.length < capacity) {
+				moves = new long[capacity];
+				keys = new int[capacity];
+			}
+		}
+
+		numOfMoves = 0;
+		if (tableKey == HandClassifier.INVALID) {
+			generateSingles(n, 0, required);
+			generatePairs(n, 0, required);
+			generateTriples(n, 0, required);
+			generateFives(n, 0, required);
+		} else {
+			switch (HandClassifier.sizeOf(HandClassifier.typeOf(tableKey))) {
+			case 1:
+				generateSingles(n, tableKey, required);
+				break;
+			case 2:
+				generatePairs(n, tableKey, required);
+				break;
+			case 3:
+				generateTriples(n, tableKey, required);
+				break;
+			default:
+				generateFives(n, tableKey, required);
+				break;
+			}
+		}
+		return numOfMoves;
+	}
+
+	/**
+	 * Returns the number of moves generated by the last call of generate().
+	 *
+	 * @return the number of moves
+	 */
+	public int getNumOfMoves() {
+		return numOfMoves;
+	}
+
+	/**
+	 * Returns the mask of the specified move.
+	 *
+	 * @param i the index of the move (between 0 and getNumOfMoves() - 1)
+	 * @return the 52-bit mask of the cards of the move
+	 */
+	public long getMove(int i) {
+		return moves[i];
+	}
+
+	/**
+	 * Returns the HandClassifier key of the specified move.
+	 *
+	 * @param i the index of the move (between 0 and getNumOfMoves() - 1)
+	 * @return the key of the hand composed by the move
+	 */
+	public int getKey(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * Returns the indices of the cards of a move in the specified list, in the
+	 * form accepted by CardGame.makeMove().
+	 *
+	 * @param move  the 52-bit mask of the cards of the move
+	 * @param cards the list of cards held by the player
+	 * @return the list of card indices
+	 */
+	public static int[] toCardIdx(long move, CardList cards) {
+		int[] cardIdx = new int[Long.bitCount(move)];
+		int count = 0;
+		for (int i = 0; i < cards.size() && count < cardIdx.length; i++) {
+			if ((move & (1L << BigTwoCardSet.indexOf(cards.getCard(i)))) != 0) {
+				cardIdx[count++] = i;
+			}
+		}
+		return cardIdx;
+	}
+
+	// Records the move if it is valid, beats the table key and contains the required cards
+	private void emit(long move, int key, int tableKey, long required) {
+		if (key > tableKey && (move & required) == required) {
+			moves[numOfMoves] = move;
+			keys[numOfMoves] = key;
+			numOfMoves++;
+		}
+	}
+
+	private void generateSingles(int n, int tableKey, long required) {
+		for (int a = 0; a < n; a++) {
+			int pa = pos[a];
+			emit(1L << pa, HandClassifier.lookup(1, pa), tableKey, required);
+		}
+	}
+
+	private void generatePairs(int n, int tableKey, long required) {
+		for (int b = 1; b < n; b++) {
+			int pb = pos[b];
+			for (int a = b - 1; a >= 0 && (pos[a] >>> 2) == (pb >>> 2); a--) {
+				int pa = pos[a];
+				int index = pa + HandClassifier.binomial(pb, 2);
+				emit((1L << pa) | (1L << pb), HandClassifier.lookup(2, index), tableKey, required);
+			}
+		}
+	}
+
+	private void generateTriples(int n, int tableKey, long required) {
+		for (int c = 2; c < n; c++) {
+			int pc = pos[c];
+			for (int b = c - 1; b >= 1 && (pos[b] >>> 2) == (pc >>> 2); b--) {
+				int pb = pos[b];
+				for (int a = b - 1; a >= 0 && (pos[a] >>> 2) == (pc >>> 2); a--) {
+					int pa = pos[a];
+					int index = pa + HandClassifier.binomial(pb, 2) + HandClassifier.binomial(pc, 3);
+					emit((1L << pa) | (1L << pb) | (1L << pc), HandClassifier.lookup(3, index), tableKey, required);
+				}
+			}
+		}
+	}
+
+	private void generateFives(int n, int tableKey, long required) {
+		for (int e = 4; e < n; e++) {
+			int pe = pos[e];
+			int ie = HandClassifier.binomial(pe, 5);
+			long me = 1L << pe;
+			for (int d = 3; d < e; d++) {
+				int pd = pos[d];
+				int id = ie + HandClassifier.binomial(pd, 4);
+				long md = me | (1L << pd);
+				for (int c = 2; c < d; c++) {
+					int pc = pos[c];
+					int ic = id + HandClassifier.binomial(pc, 3);
+					long mc = md | (1L << pc);
+					for (int b = 1; b < c; b++) {
+						int pb = pos[b];
+						int ib = ic + HandClassifier.binomial(pb, 2);
+						long mb = mc | (1L << pb);
+						for (int a = 0; a < b; a++) {
+							int pa = pos[a];
+							int key = HandClassifier.lookup(5, ib + pa);
+							if (key != HandClassifier.INVALID) {
+								emit(mb | (1L << pa), key, tableKey, required);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,406 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * This class is used to model a non-blocking client connection of a card game
+ * server. The selector thread of the server moves bytes between the socket
+ * channel and this connection, while the game code uses the ordinary
+ * InputStream and OutputStream returned by getInputStream() and
+ * getOutputStream():
+ * <ul>
+ * <li>bytes read from the channel are appended to an input buffer (of at
+ * most CardGameCodec.MAX_MESSAGE_SIZE bytes). The selector thread takes the
+ * messages of a client of the binary format out of the buffer once they have
+ * arrived completely (see takeMessages()), so they are decoded without
+ * waiting for the client; the Java serialization format has no message
+ * boundaries, so a client of that format is read through the input stream,
+ * which blocks while a message is partially received;</li>
+ * <li>bytes written to the output stream are queued for this connection
+ * only, so a slow client cannot stall writes to the other clients, and are
+ * written to the channel (with a single gathering write for many queued
+ * buffers) after flush(). A payload shared by many connections is queued
+ * without being copied.</li>
+ * </ul>
+ *
+ * @author Kenneth Wong
+ */
+public class NioConnection {
+	/**
+	 * The default maximum number of bytes queued for writing before the
+	 * connection is considered too slow and closed.
+	 */
+	public static final int DEFAULT_MAX_QUEUED_BYTES = 1 << 20;
+	// maximum number of buffers written by one gathering write
+	private static final int MAX_GATHERED_BUFFERS = 64;
+
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private final int maxQueuedBytes;
+	private final long readTimeoutMillis;
+	// bytes received but not yet consumed (in read mode between reads)
+	private ByteBuffer inBuffer = ByteBuffer.allocate(1024);
+	// buffers waiting to be written to the channel
+	private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
+	private int queuedBytes = 0;
+	private boolean closed = false;
+	// whether the first bytes have told the wire format of the client
+	private boolean formatKnown = false;
+	private boolean binary = false;
+	private final InputStream inputStream = new ConnectionInputStream();
+	private final ConnectionOutputStream outputStream = new ConnectionOutputStream();
+
+	/**
+	 * Creates and returns an instance of the NioConnection class.
+	 *
+	 * @param channel           the non-blocking socket channel of the client
+	 * @param key               the key of the channel registered with the
+	 *                          selector of the server
+	 * @param maxQueuedBytes    the maximum number of bytes queued for writing
+	 * @param readTimeoutMillis the maximum time a read of the input stream
+	 *                          waits for the rest of a partially received
+	 *                          message
+	 */
+	public NioConnection(SocketChannel channel, SelectionKey key, int maxQueuedBytes, long readTimeoutMillis) {
+		this.channel = channel;
+		this.key = key;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.readTimeoutMillis = readTimeoutMillis;
+		inBuffer.flip();
+	}
+
+	/**
+	 * Returns the socket of this connection. The same Socket object is
+	 * returned on every call, so it can be used to identify the client.
+	 *
+	 * @return the socket of this connection
+	 */
+	public Socket getSocket() {
+		return channel.socket();
+	}
+
+	/**
+	 * Returns the stream of the bytes received from the client.
+	 *
+	 * @return the input stream of this connection
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * Returns the stream for sending bytes to the client. Bytes are sent when
+	 * the stream is flushed.
+	 *
+	 * @return the output stream of this connection
+	 */
+	public ConnectionOutputStream getOutputStream() {
+		return outputStream;
+	}
+
+	/**
+	 * Returns the number of received bytes which have not been read yet.
+	 *
+	 * @return the number of bytes available without blocking
+	 */
+	public synchronized int available() {
+		return inBuffer.remaining();
+	}
+
+	/**
+	 * Reads the bytes available on the channel into the input buffer. Called by
+	 * the selector thread when the channel is readable.
+	 *
+	 * @return the number of bytes read, or -1 if the client has closed the
+	 *         connection
+	 * @throws IOException if an I/O error occurs, or the client has sent
+	 *                     more than CardGameCodec.MAX_MESSAGE_SIZE bytes which
+	 *                     have not been read
+	 */
+	public synchronized int readFromChannel() throws IOException {
+		inBuffer.compact();
+		if (!inBuffer.hasRemaining()) {
+			if (inBuffer.capacity() >= CardGameCodec.MAX_MESSAGE_SIZE) {
+				// the bytes received are dropped with the connection
+				inBuffer.clear();
+				inBuffer.flip();
+				throw new IOException("Message too large");
+			}
+			ByteBuffer larger = ByteBuffer.allocate(
+					Math.min(inBuffer.capacity() * 2, CardGameCodec.MAX_MESSAGE_SIZE));
+			inBuffer.flip();
+			larger.put(inBuffer);
+			inBuffer = larger;
+		}
+		int n;
+		try {
+			n = channel.read(inBuffer);
+		} finally {
+			inBuffer.flip();
+		}
+		if (n < 0) {
+			closed = true;
+		}
+		notifyAll();
+		return n;
+	}
+
+	/**
+	 * Moves the binary messages which have arrived completely from the input
+	 * buffer to the specified queue, after reading the header of the stream
+	 * (see CardGameCodec.readBinaryHeader()). The bytes of a client of the
+	 * Java serialization format are left in the buffer. Called by the
+	 * selector thread after readFromChannel().
+	 *
+	 * @param messages the queue of the messages, each one to be decoded with
+	 *                 CardGameCodec.decode(byte[], int, int)
+	 * @return the number of messages moved to the queue
+	 * @throws StreamCorruptedException if the stream has an unknown format or
+	 *                                  a malformed message length
+	 */
+	public synchronized int takeMessages(Queue<byte[]> messages) throws StreamCorruptedException {
+		if (!formatKnown) {
+			if (!CardGameCodec.hasHeader(inBuffer)) {
+				return 0;
+			}
+			binary = CardGameCodec.readBinaryHeader(inBuffer);
+			formatKnown = true;
+		}
+		if (!binary) {
+			return 0;
+		}
+		int count = 0;
+		int length;
+		while ((length = CardGameCodec.frameLength(inBuffer)) >= 0) {
+			byte[] message = new byte[length];
+			inBuffer.get(message);
+			messages.add(message);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns true if the first bytes of the client have told its wire format
+	 * (see takeMessages()).
+	 *
+	 * @return true if the format of the client is known
+	 */
+	public synchronized boolean isFormatKnown() {
+		return formatKnown;
+	}
+
+	/**
+	 * Returns true if the client writes the binary format, whose messages are
+	 * taken by takeMessages() instead of being read from the input stream.
+	 *
+	 * @return true for the binary format; false for Java serialization, or if
+	 *         the format is not known yet
+	 */
+	public synchronized boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * Writes as many queued bytes as the channel accepts. Called by the
+	 * selector thread when the channel is writable.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public synchronized void writeToChannel() throws IOException {
+		while (!writeQueue.isEmpty()) {
+			int count = 0;
+			for (ByteBuffer buffer : writeQueue) {
+				gathered[count++] = buffer;
+				if (count == gathered.length) {
+					break;
+				}
+			}
+			long n = channel.write(gathered, 0, count);
+			queuedBytes -= n;
+			boolean full = gathered[count - 1].hasRemaining();
+			Arrays.fill(gathered, 0, count, null);
+			while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+				writeQueue.poll();
+			}
+			if (full) {
+				// the socket buffer is full; wait for the next OP_WRITE
+				return;
+			}
+		}
+		if (key.isValid()) {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Queues the specified bytes for writing to the client and asks the
+	 * selector to watch the channel for writability.
+	 *
+	 * @param buffer the bytes to be written
+	 * @throws IOException if the connection is closed or too many bytes are
+	 *                     already queued
+	 */
+	public synchronized void enqueue(ByteBuffer buffer) throws IOException {
+		append(buffer);
+		requestWrite();
+	}
+
+	// Queues the specified bytes without asking for them to be written yet
+	private synchronized void append(ByteBuffer buffer) throws IOException {
+		if (closed) {
+			throw new IOException("Connection closed");
+		}
+		if (queuedBytes + buffer.remaining() > maxQueuedBytes) {
+			throw new IOException("Write queue full (" + queuedBytes + " bytes)");
+		}
+		queuedBytes += buffer.remaining();
+		writeQueue.add(buffer);
+	}
+
+	// Asks the selector to watch the channel for writability
+	private synchronized void requestWrite() {
+		if (!writeQueue.isEmpty() && key.isValid()) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			key.selector().wakeup();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be written to the client.
+	 *
+	 * @return the number of queued bytes
+	 */
+	public synchronized int getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/**
+	 * Closes this connection and wakes up any reader waiting for bytes.
+	 */
+	public synchronized void close() {
+		closed = true;
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			// already closed
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns true if this connection is closed.
+	 *
+	 * @return true if this connection is closed; otherwise false
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	// Waits until bytes are available or the connection is closed
+	private void awaitBytes() throws IOException {
+		long deadline = System.currentTimeMillis() + readTimeoutMillis;
+		while (!inBuffer.hasRemaining() && !closed) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				throw new InterruptedIOException("Timed out waiting for the rest of a message");
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	// The input stream backed by the input buffer
+	private class ConnectionInputStream extends InputStream {
+		public int read() throws IOException {
+			synchronized (NioConnection.this) {
+				awaitBytes();
+				return inBuffer.hasRemaining() ? (inBuffer.get() & 0xff) : -1;
+			}
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			synchronized (NioConnection.this) {
+				awaitBytes();
+				if (!inBuffer.hasRemaining()) {
+					return -1;
+				}
+				int n = Math.min(len, inBuffer.remaining());
+				inBuffer.get(b, off, n);
+				return n;
+			}
+		}
+
+		public int available() {
+			return NioConnection.this.available();
+		}
+	}
+
+	/**
+	 * The output stream of a connection, which queues its bytes for the
+	 * selector thread and has them written when flushed.
+	 */
+	public class ConnectionOutputStream extends OutputStream {
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		public synchronized void write(int b) {
+			pending.write(b);
+		}
+
+		public synchronized void write(byte[] b, int off, int len) {
+			pending.write(b, off, len);
+		}
+
+		/**
+		 * Writes the remaining bytes of the specified buffer without copying
+		 * them. The buffer is queued as it is, so neither its content nor its
+		 * position may be changed afterwards; pass a duplicate of a buffer
+		 * shared with other connections.
+		 *
+		 * @param buffer the bytes to be written
+		 * @throws IOException if the connection is closed or too many bytes
+		 *                     are already queued
+		 */
+		public synchronized void writeShared(ByteBuffer buffer) throws IOException {
+			appendPending();
+			append(buffer);
+		}
+
+		public synchronized void flush() throws IOException {
+			appendPending();
+			requestWrite();
+		}
+
+		// Queues the bytes written since the last flush or shared buffer
+		private void appendPending() throws IOException {
+			if (pending.size() > 0) {
+				ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+				pending.reset();
+				append(buffer);
+			}
+		}
+
+		public void close() {
+			NioConnection.this.close();
+		}
+	}
+}
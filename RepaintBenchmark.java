@@ -0,0 +1,150 @@
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * This class is used to measure the frame time of BigTwoGUI, i.e. the time
+ * from a move being applied to the game until the user interface has been
+ * updated and painted. Games between four local players are played with
+ * MoveGenerator (passing now and then, and dealing again instead of the
+ * winning move), and after every move the event
+ * dispatch thread handles the events of the move, updates the user interface
+ * and paints the main panel into an off-screen image.
+ *
+ * <pre>
+ * java RepaintBenchmark [number of moves]  (default 2000)
+ * java -Djava.awt.headless=true RepaintBenchmark
+ * </pre>
+ *
+ * The whole main panel is laid out and painted in every frame, so the paint
+ * time is an upper bound of what Swing repaints on screen (where only the
+ * components which have changed are laid out and repainted). The time to
+ * paint the player panels alone (the cards and avatars) is printed as well.
+ *
+ * @author Chan Sze Wing
+ */
+public class RepaintBenchmark {
+	private static final int WARMUP_MOVES = 500;
+
+	/**
+	 * main() method for running the benchmark.
+	 *
+	 * @param args the number of moves measured (default 2000)
+	 * @throws Exception if the event dispatch thread fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int numOfMoves = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		CardImages.getInstance(); // the cards are drawn once their images have been read
+		final BigTwo game = new BigTwo();
+		final BigTwoGUI gui = game.getGUI();
+		gui.setClient(game.getClient());
+		for (int i = 0; i < game.getNumOfPlayers(); i++) {
+			game.getPlayerList().get(i).setName("Player " + i);
+		}
+		final BufferedImage image = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+		final long[] updateTimes = new long[numOfMoves];
+		final long[] paintTimes = new long[numOfMoves];
+		final long[] cardTimes = new long[numOfMoves];
+		final long[] start = new long[1];
+		MoveGenerator generator = new MoveGenerator();
+		Random random = new Random(1);
+
+		for (int n = -WARMUP_MOVES; n < numOfMoves; n++) {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					start[0] = System.nanoTime();
+				}
+			});
+			synchronized (game) {
+				if (n == -WARMUP_MOVES) {
+					deal(game);
+				}
+				int current = game.getCurrentPlayerIdx();
+				CardGamePlayer player = game.getPlayerList().get(current);
+				int numOfLegalMoves = generator.generate(player, game.getHandsOnTable());
+				int[] cardIdx = null;
+				// passes now and then, if passing is allowed
+				boolean mayPass = !game.getHandsOnTable().isEmpty() && game.getHandsOnTable()
+						.get(game.getHandsOnTable().size() - 1).getPlayer() != player;
+				if (numOfLegalMoves > 0 && !(mayPass && random.nextInt(4) == 0)) {
+					cardIdx = MoveGenerator.toCardIdx(
+							generator.getMove(random.nextInt(numOfLegalMoves)), player.getCardsInHand());
+				}
+				if (cardIdx != null && cardIdx.length == player.getNumOfCards()) {
+					// deals again rather than ending the game, whose dialog
+					// would block the event dispatch thread
+					deal(game);
+				} else {
+					game.applyMove(current, cardIdx);
+				}
+			}
+			// the events of the move run first, then the update they request
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+				}
+			});
+			final int i = n;
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					JPanel panel = gui.getBigTwoPanel();
+					panel.setSize(panel.getPreferredSize());
+					layOut(panel);
+					long updated = System.nanoTime();
+					Graphics2D g = image.createGraphics();
+					panel.paint(g);
+					long painted = System.nanoTime();
+					// the player panels again, i.e. the cards and avatars
+					for (BigTwoGUI.PlayerPanel playerPanel : gui.getPlayerPanels()) {
+						playerPanel.paint(g);
+					}
+					g.dispose();
+					if (i >= 0) {
+						updateTimes[i] = updated - start[0];
+						paintTimes[i] = painted - updated;
+						cardTimes[i] = System.nanoTime() - painted;
+					}
+				}
+			});
+		}
+
+		System.out.printf("%d moves: frame time (update / paint), in microseconds%n", numOfMoves);
+		print("update", updateTimes);
+		print("paint", paintTimes);
+		print("players", cardTimes);
+		System.exit(0);
+	}
+
+	// Lays out all the components (Container.validate() does nothing
+	// off-screen)
+	private static void layOut(Container container) {
+		container.doLayout();
+		for (Component component : container.getComponents()) {
+			if (component instanceof Container) {
+				layOut((Container) component);
+			}
+		}
+	}
+
+	private static void deal(BigTwo game) {
+		BigTwoDeck deck = new BigTwoDeck();
+		deck.shuffle();
+		game.start(deck);
+	}
+
+	private static void print(String name, long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long time : sorted) {
+			total += time;
+		}
+		System.out.printf("%-8s mean %8.1f  p50 %8.1f  p99 %8.1f  max %8.1f%n", name,
+				total / 1000.0 / sorted.length, sorted[sorted.length / 2] / 1000.0,
+				sorted[sorted.length * 99 / 100] / 1000.0, sorted[sorted.length - 1] / 1000.0);
+	}
+}
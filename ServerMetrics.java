@@ -0,0 +1,397 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is used to record the metrics of a card game server: the
+ * messages received and sent by type, the bytes on the wire, the latencies of
+ * handling a message (by type), of writing a broadcast and of flushing the
+ * messages of a room (see LatencyHistogram), and the numbers of connections,
+ * rooms and games. The counters are updated with atomic operations by the
+ * threads of the server, and read without stopping them.
+ * <p>
+ * The metrics can be read through JMX (see ServerMetricsMXBean) and from a
+ * plain-text endpoint in the text format of Prometheus:
+ *
+ * <pre>
+ * java BigTwoServer 2396 --metrics=9396
+ * curl http://127.0.0.1:9396/metrics
+ * </pre>
+ *
+ * @author Kenneth Wong
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+	// the percentiles reported, and their names
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+	private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9" };
+	// index of the counters of the messages of an unknown type
+	private static final int OTHER = CardGameMessage.NUM_OF_TYPES;
+
+	private final CardGameServer server;
+	private final AtomicLongArray messagesReceived = new AtomicLongArray(OTHER + 1);
+	private final AtomicLongArray messagesSent = new AtomicLongArray(OTHER + 1);
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong connectionsAccepted = new AtomicLong();
+	private final AtomicLong gamesStarted = new AtomicLong();
+	private final LatencyHistogram[] parseLatencies = new LatencyHistogram[OTHER + 1];
+	private final LatencyHistogram broadcastLatency = new LatencyHistogram();
+	private final LatencyHistogram flushLatency = new LatencyHistogram();
+	private HttpServer endpoint = null;
+
+	/**
+	 * Creates the metrics of a server.
+	 *
+	 * @param server
+	 *            the server, which supplies the numbers of connections, rooms
+	 *            and games
+	 */
+	public ServerMetrics(CardGameServer server) {
+		this.server = server;
+		for (int i = 0; i < parseLatencies.length; i++) {
+			parseLatencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Counts a message received from a client, and records the time the
+	 * server took to handle it.
+	 *
+	 * @param type
+	 *            the type of the message
+	 * @param nanos
+	 *            the time to handle the message, in nanoseconds
+	 */
+	public void messageReceived(int type, long nanos) {
+		int i = indexOf(type);
+		messagesReceived.incrementAndGet(i);
+		parseLatencies[i].record(nanos);
+	}
+
+	/**
+	 * Counts a message written to a client.
+	 *
+	 * @param type
+	 *            the type of the message
+	 * @param bytes
+	 *            the number of bytes of the message
+	 */
+	public void messageSent(int type, long bytes) {
+		messagesSent.incrementAndGet(indexOf(type));
+		bytesSent.addAndGet(bytes);
+	}
+
+	/**
+	 * Counts bytes received from a client.
+	 *
+	 * @param bytes
+	 *            the number of bytes
+	 */
+	public void bytesReceived(long bytes) {
+		bytesReceived.addAndGet(bytes);
+	}
+
+	/**
+	 * Returns a stream which counts the bytes read from the specified stream
+	 * as received (for the connections of the blocking transport).
+	 *
+	 * @param in
+	 *            the input stream of a client connection
+	 * @return the counting stream
+	 */
+	public InputStream countBytesReceived(InputStream in) {
+		return new FilterInputStream(in) {
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					bytesReceived.incrementAndGet();
+				}
+				return b;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n > 0) {
+					bytesReceived.addAndGet(n);
+				}
+				return n;
+			}
+		};
+	}
+
+	/**
+	 * Counts a connection accepted by the server.
+	 */
+	public void connectionAccepted() {
+		connectionsAccepted.incrementAndGet();
+	}
+
+	/**
+	 * Counts a game started by the server.
+	 */
+	public void gameStarted() {
+		gamesStarted.incrementAndGet();
+	}
+
+	/**
+	 * Records the time to write a broadcast to the clients of a room.
+	 *
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void recordBroadcast(long nanos) {
+		broadcastLatency.record(nanos);
+	}
+
+	/**
+	 * Records the time to send the messages buffered for the clients of a
+	 * room.
+	 *
+	 * @param nanos
+	 *            the time in nanoseconds
+	 */
+	public void recordFlush(long nanos) {
+		flushLatency.record(nanos);
+	}
+
+	public int getConnections() {
+		return server.getNumOfConnections();
+	}
+
+	public int getRooms() {
+		return server.getNumOfRooms();
+	}
+
+	public int getGames() {
+		return server.getNumOfGames();
+	}
+
+	public long getConnectionsAccepted() {
+		return connectionsAccepted.get();
+	}
+
+	public long getGamesStarted() {
+		return gamesStarted.get();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public Map<String, Long> getMessagesReceived() {
+		return toMap(messagesReceived);
+	}
+
+	public Map<String, Long> getMessagesSent() {
+		return toMap(messagesSent);
+	}
+
+	public Map<String, Double> getLatencies() {
+		LinkedHashMap<String, Double> latencies = new LinkedHashMap<String, Double>();
+		for (int i = 0; i <= OTHER; i++) {
+			if (parseLatencies[i].getCount() > 0) {
+				putLatencies(latencies, "parse." + typeName(i), parseLatencies[i]);
+			}
+		}
+		putLatencies(latencies, "broadcast", broadcastLatency);
+		putLatencies(latencies, "flush", flushLatency);
+		return latencies;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, under the name
+	 * "CardGameServer:type=Metrics,port=PORT".
+	 *
+	 * @param port
+	 *            the port of the server, which tells apart the servers of a
+	 *            JVM
+	 * @throws JMException
+	 *             if the metrics cannot be registered
+	 */
+	public void registerMBean(int port) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("CardGameServer:type=Metrics,port=" + port));
+	}
+
+	/**
+	 * Starts the plain-text endpoint of these metrics, which answers a GET
+	 * request for /metrics at the specified port of the loopback address.
+	 *
+	 * @param port
+	 *            the port of the endpoint
+	 * @throws IOException
+	 *             if the endpoint cannot be started
+	 */
+	public synchronized void startEndpoint(int port) throws IOException {
+		endpoint = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		endpoint.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		endpoint.start();
+	}
+
+	/**
+	 * Returns the port of the plain-text endpoint.
+	 *
+	 * @return the port, or -1 if the endpoint has not been started
+	 */
+	public synchronized int getEndpointPort() {
+		return (endpoint == null) ? -1 : endpoint.getAddress().getPort();
+	}
+
+	/**
+	 * Returns the metrics in the text format of Prometheus (version 0.0.4).
+	 * The latencies are summaries in seconds, whose quantiles are over the
+	 * whole life of the server.
+	 *
+	 * @return the text of the metrics
+	 */
+	public String toText() {
+		StringBuilder text = new StringBuilder(8192);
+		gauge(text, "cardgame_connections", "Open client connections.", getConnections());
+		gauge(text, "cardgame_rooms", "Rooms with at least one player.", getRooms());
+		gauge(text, "cardgame_games", "Games in progress.", getGames());
+		counter(text, "cardgame_connections_accepted_total", "Client connections accepted.",
+				connectionsAccepted.get());
+		counter(text, "cardgame_games_started_total", "Games started.", gamesStarted.get());
+		counter(text, "cardgame_received_bytes_total", "Bytes received from the clients.",
+				bytesReceived.get());
+		counter(text, "cardgame_sent_bytes_total", "Bytes of the messages sent to the clients.",
+				bytesSent.get());
+		counters(text, "cardgame_messages_received_total", "Messages received, by type.",
+				messagesReceived);
+		counters(text, "cardgame_messages_sent_total",
+				"Messages sent (a broadcast counts once for each client), by type.", messagesSent);
+
+		ArrayList<String> labels = new ArrayList<String>();
+		ArrayList<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+		for (int i = 0; i <= OTHER; i++) {
+			if (parseLatencies[i].getCount() > 0) {
+				labels.add("type=\"" + typeName(i) + "\"");
+				histograms.add(parseLatencies[i]);
+			}
+		}
+		summaries(text, "cardgame_parse_seconds", "Time to handle a message from a client, by type.",
+				labels, histograms);
+		summaries(text, "cardgame_broadcast_seconds", "Time to write a broadcast to the clients of a room.",
+				Collections.singletonList(""), Collections.singletonList(broadcastLatency));
+		summaries(text, "cardgame_flush_seconds", "Time to send the messages buffered for a room.",
+				Collections.singletonList(""), Collections.singletonList(flushLatency));
+		return text.toString();
+	}
+
+	private static int indexOf(int type) {
+		return (type >= 0 && type < OTHER) ? type : OTHER;
+	}
+
+	private static String typeName(int i) {
+		return (i == OTHER) ? "OTHER" : CardGameMessage.getTypeName(i);
+	}
+
+	private static Map<String, Long> toMap(AtomicLongArray counts) {
+		LinkedHashMap<String, Long> map = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < counts.length(); i++) {
+			map.put(typeName(i), counts.get(i));
+		}
+		return map;
+	}
+
+	// Adds the statistics of a histogram in microseconds
+	private static void putLatencies(Map<String, Double> map, String name, LatencyHistogram histogram) {
+		map.put(name + ".count", (double) histogram.getCount());
+		map.put(name + ".mean", histogram.getMean() / 1e3);
+		long[] values = histogram.getPercentiles(PERCENTILES);
+		for (int p = 0; p < PERCENTILES.length; p++) {
+			map.put(name + "." + PERCENTILE_NAMES[p], values[p] / 1e3);
+		}
+		map.put(name + ".max", histogram.getMax() / 1e3);
+	}
+
+	private static void header(StringBuilder text, String name, String help, String type) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void gauge(StringBuilder text, String name, String help, long value) {
+		header(text, name, help, "gauge");
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void counter(StringBuilder text, String name, String help, long value) {
+		header(text, name, help, "counter");
+		text.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void counters(StringBuilder text, String name, String help, AtomicLongArray counts) {
+		header(text, name, help, "counter");
+		for (int i = 0; i < counts.length(); i++) {
+			text.append(name).append("{type=\"").append(typeName(i)).append("\"} ")
+					.append(counts.get(i)).append('\n');
+		}
+	}
+
+	// Appends the summaries of histograms with the specified labels (e.g.
+	// type="MOVE", or empty), followed by their maxima
+	private static void summaries(StringBuilder text, String name, String help, List<String> labels,
+			List<LatencyHistogram> histograms) {
+		header(text, name, help, "summary");
+		for (int h = 0; h < histograms.size(); h++) {
+			LatencyHistogram histogram = histograms.get(h);
+			String label = labels.get(h);
+			long[] values = histogram.getPercentiles(PERCENTILES);
+			for (int p = 0; p < PERCENTILES.length; p++) {
+				text.append(name).append('{').append(label).append(label.isEmpty() ? "" : ",")
+						.append("quantile=\"").append(PERCENTILES[p]).append("\"} ")
+						.append(seconds(values[p])).append('\n');
+			}
+			text.append(name).append("_sum").append(braces(label)).append(' ')
+					.append(seconds(histogram.getSum())).append('\n');
+			text.append(name).append("_count").append(braces(label)).append(' ')
+					.append(histogram.getCount()).append('\n');
+		}
+		header(text, name + "_max", "Largest value of " + name + ".", "gauge");
+		for (int h = 0; h < histograms.size(); h++) {
+			text.append(name).append("_max").append(braces(labels.get(h))).append(' ')
+					.append(seconds(histograms.get(h).getMax())).append('\n');
+		}
+	}
+
+	private static String braces(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	private static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+}
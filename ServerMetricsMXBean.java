@@ -0,0 +1,87 @@
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of a card game server (see
+ * ServerMetrics), registered with the platform MBean server so that it can
+ * be read with JConsole, VisualVM or any other JMX client. The counters are
+ * totals since the server started.
+ *
+ * @author Kenneth Wong
+ */
+public interface ServerMetricsMXBean {
+	/**
+	 * Returns the number of open client connections.
+	 *
+	 * @return the number of connections
+	 */
+	public int getConnections();
+
+	/**
+	 * Returns the number of rooms with at least one player.
+	 *
+	 * @return the number of rooms
+	 */
+	public int getRooms();
+
+	/**
+	 * Returns the number of games in progress.
+	 *
+	 * @return the number of games
+	 */
+	public int getGames();
+
+	/**
+	 * Returns the number of client connections accepted.
+	 *
+	 * @return the number of connections accepted
+	 */
+	public long getConnectionsAccepted();
+
+	/**
+	 * Returns the number of games started.
+	 *
+	 * @return the number of games started
+	 */
+	public long getGamesStarted();
+
+	/**
+	 * Returns the number of bytes received from the clients.
+	 *
+	 * @return the number of bytes received
+	 */
+	public long getBytesReceived();
+
+	/**
+	 * Returns the number of bytes of the messages sent to the clients.
+	 *
+	 * @return the number of bytes sent
+	 */
+	public long getBytesSent();
+
+	/**
+	 * Returns the number of messages received from the clients, by message
+	 * type.
+	 *
+	 * @return the numbers of messages, indexed by the names of the types
+	 */
+	public Map<String, Long> getMessagesReceived();
+
+	/**
+	 * Returns the number of messages sent to the clients (a broadcast counts
+	 * once for each client), by message type.
+	 *
+	 * @return the numbers of messages, indexed by the names of the types
+	 */
+	public Map<String, Long> getMessagesSent();
+
+	/**
+	 * Returns the count, mean, 50th, 90th, 99th and 99.9th percentiles and
+	 * maximum of the latencies measured by the server, in microseconds, e.g.
+	 * "parse.MOVE.p99" for the time to handle a MOVE message, "broadcast.p50"
+	 * for the time to write a broadcast to the clients of a room, or
+	 * "flush.max" for the time to send the messages buffered for a room.
+	 *
+	 * @return the statistics of the latencies, indexed by their names
+	 */
+	public Map<String, Double> getLatencies();
+}
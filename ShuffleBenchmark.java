@@ -0,0 +1,192 @@
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class is used to measure the throughput of shuffling a deck with
+ * different random number generators, and to check that the shuffle is
+ * uniform, comparing Deck.shuffle() with the shuffle it replaced (which
+ * swapped every card with a card at a random index of the whole deck, using
+ * Math.random()).
+ *
+ * <pre>
+ * java ShuffleBenchmark [number of shuffles checked]  (default 1000000)
+ * </pre>
+ *
+ * The throughput is measured on one thread and on a thread per processor
+ * (Math.random() is shared by all the threads). The uniformity check counts,
+ * for every position of the deck, how often each card ends up there, and
+ * computes the chi-square statistic of the counts against the uniform
+ * distribution (2601 degrees of freedom); it also counts the orders of a
+ * deck of 3 cards, where the old shuffle is visibly biased (it has 27 equally
+ * likely outcomes for 6 orders).
+ *
+ * @author Kenneth Wong
+ *
+ */
+public class ShuffleBenchmark {
+	private static final int WARMUP_SHUFFLES = 200000;
+	private static final int MEASURED_SHUFFLES = 1000000;
+	// the normal deviate of the chi-square statistic above which a shuffle
+	// fails the check (p < 0.001)
+	private static final double CRITICAL_Z = 3.09;
+
+	/**
+	 * main() method for running the benchmark and the check.
+	 *
+	 * @param args
+	 *            the number of shuffles checked for uniformity (default
+	 *            1000000)
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int numOfChecked = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		int numOfThreads = Runtime.getRuntime().availableProcessors();
+
+		System.out.printf("%-28s %16s %16s%n", "shuffle", "1 thread /s",
+				numOfThreads + " threads /s");
+		for (String name : new String[] { "old (Math.random)", "Deck.shuffle()", "SplittableRandom",
+				"ThreadLocalRandom", "SecureRandom" }) {
+			System.out.printf("%-28s %16.0f %16.0f%n", name, throughput(name, 1),
+					throughput(name, numOfThreads));
+		}
+
+		System.out.printf("%nuniformity of %d shuffles of 52 cards (chi-square, 2601 df):%n",
+				numOfChecked);
+		boolean passed = true;
+		for (String name : new String[] { "old (Math.random)", "Deck.shuffle()", "SecureRandom" }) {
+			boolean uniform = checkUniformity(name, numOfChecked);
+			if (!name.startsWith("old")) {
+				passed &= uniform;
+			}
+		}
+
+		System.out.printf("%norders of 3 cards (%d shuffles, expected %.4f each):%n", numOfChecked,
+				1.0 / 6);
+		for (String name : new String[] { "old (Math.random)", "Deck.shuffle()" }) {
+			printOrdersOfThree(name, numOfChecked);
+		}
+		System.out.println(passed ? "\nDeck.shuffle() is uniform." : "\nDeck.shuffle() is NOT uniform.");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	// Returns the shuffles per second of the threads together
+	private static double throughput(final String name, int numOfThreads) throws InterruptedException {
+		Thread[] threads = new Thread[numOfThreads];
+		final long[] elapsed = new long[numOfThreads];
+		for (int t = 0; t < numOfThreads; t++) {
+			final int i = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					Deck deck = new BigTwoDeck();
+					RandomGenerator random = newRandom(name);
+					for (int n = 0; n < WARMUP_SHUFFLES; n++) {
+						shuffle(name, deck, random);
+					}
+					long start = System.nanoTime();
+					for (int n = 0; n < MEASURED_SHUFFLES; n++) {
+						shuffle(name, deck, random);
+					}
+					elapsed[i] = System.nanoTime() - start;
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		long slowest = 0;
+		for (int t = 0; t < numOfThreads; t++) {
+			threads[t].join();
+			slowest = Math.max(slowest, elapsed[t]);
+		}
+		return (double) MEASURED_SHUFFLES * numOfThreads / slowest * 1e9;
+	}
+
+	// Checks the counts of the cards at every position
+	private static boolean checkUniformity(String name, int numOfShuffles) {
+		Deck deck = new BigTwoDeck();
+		int size = deck.size();
+		RandomGenerator random = newRandom(name);
+		long[][] counts = new long[size][size];
+		for (int n = 0; n < numOfShuffles; n++) {
+			deck.initialize();
+			shuffle(name, deck, random);
+			for (int position = 0; position < size; position++) {
+				Card card = deck.getCard(position);
+				counts[position][card.getSuit() * 13 + card.getRank()]++;
+			}
+		}
+		// each row and column sums to numOfShuffles
+		double expected = (double) numOfShuffles / size;
+		double chiSquare = 0;
+		long worst = 0;
+		for (long[] row : counts) {
+			for (long count : row) {
+				chiSquare += (count - expected) * (count - expected) / expected;
+				worst = Math.max(worst, Math.abs(count - Math.round(expected)));
+			}
+		}
+		// Wilson-Hilferty approximation of the chi-square distribution
+		int df = (size - 1) * (size - 1);
+		double z = (Math.cbrt(chiSquare / df) - (1 - 2.0 / (9 * df))) / Math.sqrt(2.0 / (9 * df));
+		boolean uniform = z < CRITICAL_Z;
+		System.out.printf("%-28s chi-square %10.1f  z %8.2f  max deviation %5.2f%%  %s%n", name,
+				chiSquare, z, 100.0 * worst / expected, uniform ? "uniform" : "BIASED");
+		return uniform;
+	}
+
+	// Prints the frequencies of the 6 orders of a deck of 3 cards
+	private static void printOrdersOfThree(String name, int numOfShuffles) {
+		Deck deck = new Deck();
+		RandomGenerator random = newRandom(name);
+		long[] counts = new long[6];
+		for (int n = 0; n < numOfShuffles; n++) {
+			deck.removeAllCards();
+			for (int rank = 0; rank < 3; rank++) {
+				deck.addCard(new Card(0, rank));
+			}
+			shuffle(name, deck, random);
+			int first = deck.getCard(0).getRank(), second = deck.getCard(1).getRank();
+			counts[first * 2 + ((second > first) ? second - 1 : second)]++;
+		}
+		System.out.printf("%-28s", name);
+		for (long count : counts) {
+			System.out.printf(" %.4f", (double) count / numOfShuffles);
+		}
+		System.out.println();
+	}
+
+	private static RandomGenerator newRandom(String name) {
+		if (name.equals("SplittableRandom")) {
+			return new SplittableRandom();
+		} else if (name.equals("ThreadLocalRandom")) {
+			return ThreadLocalRandom.current();
+		} else if (name.equals("SecureRandom")) {
+			return new SecureRandom();
+		}
+		return Deck.getThreadRandom();
+	}
+
+	private static void shuffle(String name, Deck deck, RandomGenerator random) {
+		if (name.startsWith("old")) {
+			oldShuffle(deck);
+		} else {
+			deck.shuffle(random);
+		}
+	}
+
+	// The shuffle replaced by Deck.shuffle()
+	private static void oldShuffle(Deck deck) {
+		for (int i = 0; i < deck.size(); i++) {
+			int j = (int) (Math.random() * deck.size());
+			if (i != j) {
+				Card card = deck.setCard(i, deck.getCard(j));
+				deck.setCard(j, card);
+			}
+		}
+	}
+}
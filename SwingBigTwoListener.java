@@ -0,0 +1,63 @@
+import javax.swing.SwingUtilities;
+
+/**
+ * This class is used to forward the events of a Big Two card game to another
+ * listener on the event dispatch thread of Swing, so that a game updated by
+ * a network thread can notify a GUI. The events are delivered in the order
+ * they occur, but after the thread of the game has moved on, so the listener
+ * must read the state of the game while holding its lock.
+ *
+ * @author Chan Sze Wing
+ */
+public class SwingBigTwoListener implements BigTwoListener {
+	private final BigTwoListener listener;
+
+	/**
+	 * Creates a listener forwarding the events to the specified listener.
+	 *
+	 * @param listener the listener to be notified on the event dispatch thread
+	 */
+	public SwingBigTwoListener(BigTwoListener listener) {
+		this.listener = listener;
+	}
+
+	public void gameStarted(final int firstPlayerIdx) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				listener.gameStarted(firstPlayerIdx);
+			}
+		});
+	}
+
+	public void movePlayed(final int playerIdx, final Hand hand) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				listener.movePlayed(playerIdx, hand);
+			}
+		});
+	}
+
+	public void invalidMove(final int playerIdx, final int[] cardIdx) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				listener.invalidMove(playerIdx, cardIdx);
+			}
+		});
+	}
+
+	public void turnChanged(final int currentPlayerIdx) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				listener.turnChanged(currentPlayerIdx);
+			}
+		});
+	}
+
+	public void gameEnded(final int winnerIdx) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				listener.gameEnded(winnerIdx);
+			}
+		});
+	}
+}
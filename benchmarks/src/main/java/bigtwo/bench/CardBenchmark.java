@@ -0,0 +1,103 @@
+package bigtwo.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bigtwo.BigTwoCard;
+import bigtwo.BigTwoDeck;
+import bigtwo.Card;
+import bigtwo.CardList;
+
+/**
+ * Benchmarks of comparing and sorting Big Two cards: BigTwoCard.compareTo()
+ * and CardList.sort() of a hand of 13 cards. The cards of the hand are put
+ * back in a random order before every sort, which fillHand measures alone.
+ *
+ * @author Chan Sze Wing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardBenchmark {
+	private static final int NUM_OF_SAMPLES = 1024; // a power of two
+
+	private final BigTwoCard[] cards = new BigTwoCard[NUM_OF_SAMPLES];
+	private final Card[][] hands = new Card[NUM_OF_SAMPLES][];
+	private final CardList hand = new CardList();
+	private int next = 0;
+
+	/**
+	 * Draws the cards and the hands (in a random order).
+	 */
+	@Setup
+	public void setUp() {
+		SplittableRandom random = new SplittableRandom(1);
+		for (int i = 0; i < NUM_OF_SAMPLES; i++) {
+			cards[i] = BigTwoCard.valueOf(random.nextInt(4), random.nextInt(13));
+			BigTwoDeck deck = new BigTwoDeck();
+			deck.shuffle(random);
+			hands[i] = new Card[13];
+			for (int j = 0; j < 13; j++) {
+				hands[i][j] = deck.getCard(j);
+			}
+		}
+		for (int j = 0; j < 13; j++) {
+			hand.addCard(hands[0][j]);
+		}
+	}
+
+	/**
+	 * Compares two cards.
+	 *
+	 * @return the result of the comparison
+	 */
+	@Benchmark
+	public int compareTo() {
+		int i = next = (next + 1) & (NUM_OF_SAMPLES - 1);
+		return cards[i].compareTo(cards[(i * 7 + 3) & (NUM_OF_SAMPLES - 1)]);
+	}
+
+	/**
+	 * Puts the cards of a hand in a random order (the baseline of sortHand).
+	 *
+	 * @return the hand
+	 */
+	@Benchmark
+	public CardList fillHand() {
+		return fill();
+	}
+
+	/**
+	 * Puts the cards of a hand in a random order, and sorts them.
+	 *
+	 * @return the hand
+	 */
+	@Benchmark
+	public CardList sortHand() {
+		CardList cards = fill();
+		cards.sort();
+		return cards;
+	}
+
+	private CardList fill() {
+		Card[] cards = hands[next = (next + 1) & (NUM_OF_SAMPLES - 1)];
+		for (int j = 0; j < cards.length; j++) {
+			hand.setCard(j, cards[j]);
+		}
+		return hand;
+	}
+}
@@ -0,0 +1,119 @@
+package bigtwo.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bigtwo.BigTwoEngine;
+import bigtwo.Card;
+import bigtwo.CardGamePlayer;
+import bigtwo.CardList;
+import bigtwo.Hand;
+import bigtwo.HandClassifier;
+
+/**
+ * Benchmarks of the hands of each type (the subclasses of Hand): isValid(),
+ * getTopCard(), beats() against a hand of the same type, and composing the
+ * hand from its cards with BigTwoEngine.composeHand() (which classifies the
+ * cards and creates the hand). Each call takes the next of 1024 random hands
+ * of the type.
+ *
+ * @author Chan Sze Wing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandBenchmark {
+	private static final int NUM_OF_SAMPLES = 1024; // a power of two
+	private static final String[] TYPES = { "Single", "Pair", "Triple", "Straight", "Flush",
+			"FullHouse", "Quad", "StraightFlush" };
+
+	/**
+	 * The type of the hands (the name of the subclass of Hand).
+	 */
+	@Param({ "Single", "Pair", "Triple", "Straight", "Flush", "FullHouse", "Quad", "StraightFlush" })
+	public String type;
+
+	private final CardGamePlayer player = new CardGamePlayer("Player");
+	private final CardList[] cards = new CardList[NUM_OF_SAMPLES];
+	private final Hand[] hands = new Hand[NUM_OF_SAMPLES];
+	private int next = 0;
+
+	/**
+	 * Draws the hands of the type.
+	 */
+	@Setup
+	public void setUp() {
+		int typeCode = HandClassifier.SINGLE;
+		while (!TYPES[typeCode - HandClassifier.SINGLE].equals(type)) {
+			typeCode++;
+		}
+		CardList[] samples = SampleHands.draw(typeCode, NUM_OF_SAMPLES, new SplittableRandom(1));
+		for (int i = 0; i < NUM_OF_SAMPLES; i++) {
+			cards[i] = samples[i];
+			hands[i] = BigTwoEngine.composeHand(player, samples[i]);
+			if (!hands[i].getClass().getSimpleName().equals(type)) {
+				throw new IllegalStateException(cards[i] + " is not a " + type);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a hand is valid.
+	 *
+	 * @return the result of the check
+	 */
+	@Benchmark
+	public boolean isValid() {
+		return hands[next()].isValid();
+	}
+
+	/**
+	 * Returns the top card of a hand.
+	 *
+	 * @return the top card
+	 */
+	@Benchmark
+	public Card getTopCard() {
+		return hands[next()].getTopCard();
+	}
+
+	/**
+	 * Checks if a hand beats another hand of the same type.
+	 *
+	 * @return the result of the check
+	 */
+	@Benchmark
+	public boolean beats() {
+		int i = next();
+		return hands[i].beats(hands[(i * 7 + 3) & (NUM_OF_SAMPLES - 1)]);
+	}
+
+	/**
+	 * Composes a hand from its cards.
+	 *
+	 * @return the hand
+	 */
+	@Benchmark
+	public Hand composeHand() {
+		return BigTwoEngine.composeHand(player, cards[next()]);
+	}
+
+	private int next() {
+		return next = (next + 1) & (NUM_OF_SAMPLES - 1);
+	}
+}
@@ -0,0 +1,179 @@
+package bigtwo.bench;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bigtwo.BigTwoCardSet;
+import bigtwo.BigTwoDeck;
+import bigtwo.BigTwoEngine;
+import bigtwo.BigTwoStrategy;
+import bigtwo.CardGamePlayer;
+import bigtwo.Hand;
+import bigtwo.HandClassifier;
+import bigtwo.MoveGenerator;
+
+/**
+ * Benchmarks of checking a move with BigTwoEngine, in a game where the current
+ * player has to beat a five-card hand on the table (the most expensive check):
+ * <ul>
+ * <li>isLegalMove() of a legal move, i.e. every check of checkMove() without
+ * playing the move;</li>
+ * <li>checkMove() of an illegal move (a five-card hand which does not beat the
+ * table), which leaves the game unchanged;</li>
+ * <li>checkMove() of a legal move, which plays it: the position is set up
+ * again before every call, outside of the measured time (such a per-call
+ * setup adds some overhead of its own to the measurement).</li>
+ * </ul>
+ *
+ * @author Chan Sze Wing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+
+	/**
+	 * A game at the position of the benchmarks.
+	 */
+	@State(Scope.Thread)
+	public static class Position {
+		BigTwoEngine game;
+		BigTwoDeck deck;
+		int[][] history; // turns played from the start to the position
+		int numOfHands; // hands on the table at the position
+		int playerIdx;
+		int[] legalMove, illegalMove;
+
+		/**
+		 * Plays games with the greedy strategy until the current player can
+		 * beat a five-card hand on the table, and also holds a five-card hand
+		 * which does not beat it.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			MoveGenerator generator = new MoveGenerator();
+			for (long seed = 1;; seed++) {
+				SplittableRandom random = new SplittableRandom(seed);
+				deck = new BigTwoDeck();
+				deck.shuffle(random);
+				game = new BigTwoEngine();
+				game.start(deck);
+				ArrayList<int[]> turns = new ArrayList<int[]>();
+				while (!game.endOfGame()) {
+					playerIdx = game.getCurrentPlayerIdx();
+					CardGamePlayer player = game.getPlayerList().get(playerIdx);
+					ArrayList<Hand> handsOnTable = game.getHandsOnTable();
+					Hand last = handsOnTable.isEmpty() ? null : handsOnTable.get(handsOnTable.size() - 1);
+					boolean mayPass = (last != null) && (last.getPlayer() != player);
+					if (mayPass && last.size() == 5 && findMoves(generator, player, last)) {
+						history = turns.toArray(new int[turns.size()][]);
+						numOfHands = handsOnTable.size();
+						return;
+					}
+					generator.generate(player, handsOnTable);
+					long move = BigTwoStrategy.GREEDY.chooseMove(game, playerIdx, generator, mayPass, random);
+					int[] cardIdx = (move == BigTwoStrategy.PASS) ? null
+							: MoveGenerator.toCardIdx(move, player.getCardsInHand());
+					turns.add(cardIdx);
+					game.applyMove(playerIdx, cardIdx);
+				}
+			}
+		}
+
+		/**
+		 * Sets up the position again if the move has been played.
+		 */
+		void restore() {
+			if (game.getHandsOnTable().size() != numOfHands) {
+				game.start(deck);
+				for (int[] cardIdx : history) {
+					game.applyMove(game.getCurrentPlayerIdx(), cardIdx);
+				}
+			}
+		}
+
+		// Finds a five-card hand of the player which beats the table and one
+		// which does not
+		private boolean findMoves(MoveGenerator generator, CardGamePlayer player, Hand last) {
+			legalMove = illegalMove = null;
+			int n = generator.generate(BigTwoCardSet.maskOf(player.getCardsInHand()),
+					HandClassifier.INVALID, 0L);
+			for (int i = 0; i < n; i++) {
+				long move = generator.getMove(i);
+				if (Long.bitCount(move) != 5) {
+					continue;
+				}
+				if (generator.getKey(i) > last.getStrengthKey()) {
+					legalMove = MoveGenerator.toCardIdx(move, player.getCardsInHand());
+				} else {
+					illegalMove = MoveGenerator.toCardIdx(move, player.getCardsInHand());
+				}
+			}
+			return (legalMove != null) && (illegalMove != null);
+		}
+	}
+
+	/**
+	 * The game at the position, set up again before every call.
+	 */
+	@State(Scope.Thread)
+	public static class RestoredPosition extends Position {
+		/**
+		 * Sets up the position again.
+		 */
+		@Setup(Level.Invocation)
+		public void setUpInvocation() {
+			restore();
+		}
+	}
+
+	/**
+	 * Checks a legal move without playing it.
+	 *
+	 * @param position the game
+	 * @return the result of the check
+	 */
+	@Benchmark
+	public boolean isLegalMove(Position position) {
+		return position.game.isLegalMove(position.playerIdx, position.legalMove);
+	}
+
+	/**
+	 * Checks an illegal move (the game does not change).
+	 *
+	 * @param position the game
+	 * @return the game
+	 */
+	@Benchmark
+	public BigTwoEngine checkMoveIllegal(Position position) {
+		position.game.checkMove(position.playerIdx, position.illegalMove);
+		return position.game;
+	}
+
+	/**
+	 * Checks and plays a legal move.
+	 *
+	 * @param position the game, at the position before the move
+	 * @return the game
+	 */
+	@Benchmark
+	public BigTwoEngine checkMoveLegal(RestoredPosition position) {
+		position.game.checkMove(position.playerIdx, position.legalMove);
+		return position.game;
+	}
+}
@@ -0,0 +1,74 @@
+package bigtwo.bench;
+
+import java.util.SplittableRandom;
+
+import bigtwo.BigTwoCardSet;
+import bigtwo.CardList;
+import bigtwo.HandClassifier;
+import bigtwo.MoveGenerator;
+
+/**
+ * This class is used to draw sample hands of each type for the benchmarks,
+ * from all the valid hands of a full deck (so that, e.g., straight flushes
+ * are as varied as singles).
+ *
+ * @author Chan Sze Wing
+ */
+final class SampleHands {
+	private static long[] moves = null; // all the valid hands of a full deck
+	private static int[] keys = null;
+
+	private SampleHands() {
+	}
+
+	/**
+	 * Returns hands of the specified type chosen at random (with repetition).
+	 *
+	 * @param type   the HandClassifier type of the hands
+	 * @param count  the number of hands
+	 * @param random the random number generator
+	 * @return the cards of the hands, sorted
+	 */
+	static CardList[] draw(int type, int count, SplittableRandom random) {
+		generate();
+		int numOfHands = 0;
+		int[] ofType = new int[moves.length];
+		for (int i = 0; i < moves.length; i++) {
+			if (HandClassifier.typeOf(keys[i]) == type) {
+				ofType[numOfHands++] = i;
+			}
+		}
+		CardList[] hands = new CardList[count];
+		for (int i = 0; i < count; i++) {
+			hands[i] = toCardList(moves[ofType[random.nextInt(numOfHands)]]);
+		}
+		return hands;
+	}
+
+	/**
+	 * Returns the cards of a 52-bit mask, in the Big Two order.
+	 *
+	 * @param mask the mask of the cards
+	 * @return the list of cards
+	 */
+	static CardList toCardList(long mask) {
+		CardList cards = new CardList();
+		for (long rest = mask; rest != 0; rest &= rest - 1) {
+			cards.addCard(BigTwoCardSet.cardOf(Long.numberOfTrailingZeros(rest)));
+		}
+		return cards;
+	}
+
+	private static synchronized void generate() {
+		if (moves == null) {
+			MoveGenerator generator = new MoveGenerator();
+			int n = generator.generate(BigTwoCardSet.FULL_MASK, HandClassifier.INVALID, 0L);
+			moves = new long[n];
+			keys = new int[n];
+			for (int i = 0; i < n; i++) {
+				moves[i] = generator.getMove(i);
+				keys[i] = generator.getKey(i);
+			}
+		}
+	}
+}